@@ -2,6 +2,7 @@ package com.chattriggers.ctjs.internal.mixins;
 
 import com.chattriggers.ctjs.internal.engine.CTEvents;
 import com.chattriggers.ctjs.api.triggers.TriggerType;
+import com.chattriggers.ctjs.internal.engine.JSLoader;
 import io.netty.channel.ChannelHandlerContext;
 import net.minecraft.network.ClientConnection;
 import net.minecraft.network.NetworkSide;
@@ -39,6 +40,7 @@ public abstract class ClientConnectionMixin {
         cancellable = true
     )
     private void injectSendPacket(Packet<?> packet, @Nullable PacketCallbacks callbacks, CallbackInfo ci) {
-        TriggerType.PACKET_SENT.triggerAll(packet, ci);
+        if (JSLoader.hasTriggers(TriggerType.PACKET_SENT, packet.getClass()))
+            JSLoader.execClassFiltered(TriggerType.PACKET_SENT, packet.getClass(), new Object[] { packet, ci });
     }
 }
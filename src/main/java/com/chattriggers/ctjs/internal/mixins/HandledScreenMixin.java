@@ -3,6 +3,7 @@ package com.chattriggers.ctjs.internal.mixins;
 import com.chattriggers.ctjs.api.inventory.Item;
 import com.chattriggers.ctjs.api.message.TextComponent;
 import com.chattriggers.ctjs.api.triggers.TriggerType;
+import com.chattriggers.ctjs.internal.engine.JSLoader;
 import net.minecraft.client.gui.DrawContext;
 import net.minecraft.client.gui.screen.Screen;
 import net.minecraft.client.gui.screen.ingame.HandledScreen;
@@ -42,6 +43,9 @@ public class HandledScreenMixin extends Screen {
         cancellable = true
     )
     private void injectDrawMouseoverTooltip(DrawContext context, int x, int y, CallbackInfo ci) {
+        if (!JSLoader.hasTriggers(TriggerType.ITEM_TOOLTIP))
+            return;
+
         ItemStack stack = focusedSlot.getStack();
         TriggerType.ITEM_TOOLTIP.triggerAll(
             getTooltipFromItem(Objects.requireNonNull(client), stack)
@@ -1,6 +1,7 @@
 package com.chattriggers.ctjs.internal.mixins;
 
 import com.chattriggers.ctjs.api.triggers.TriggerType;
+import com.chattriggers.ctjs.internal.engine.JSLoader;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.EntityType;
 import net.minecraft.entity.LivingEntity;
@@ -20,7 +21,7 @@ public abstract class LivingEntityMixin extends Entity {
 
     @Inject(method = "onDeath", at = @At(value = "INVOKE", target = "Lnet/minecraft/entity/LivingEntity;setPose(Lnet/minecraft/entity/EntityPose;)V"))
     private void chattriggers$entityDeath(DamageSource damageSource, CallbackInfo ci) {
-        if (getWorld().isClient) {
+        if (getWorld().isClient && JSLoader.hasTriggers(TriggerType.ENTITY_DEATH)) {
             TriggerType.ENTITY_DEATH.triggerAll(this);
         }
     }
@@ -3,6 +3,7 @@ package com.chattriggers.ctjs.internal.mixins;
 import com.chattriggers.ctjs.api.triggers.TriggerType;
 import com.chattriggers.ctjs.internal.NameTagOverridable;
 import com.chattriggers.ctjs.api.message.TextComponent;
+import com.chattriggers.ctjs.internal.engine.JSLoader;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.EntityType;
 import net.minecraft.entity.LivingEntity;
@@ -41,7 +42,7 @@ public abstract class PlayerEntityMixin extends LivingEntity implements NameTagO
         )
     )
     private void chattriggers$entityDamage(Entity target, CallbackInfo ci) {
-        if (getWorld().isClient) {
+        if (getWorld().isClient && JSLoader.hasTriggers(TriggerType.ENTITY_DAMAGE)) {
             TriggerType.ENTITY_DAMAGE.triggerAll(com.chattriggers.ctjs.api.entity.Entity.fromMC(target));
         }
     }
@@ -54,7 +55,7 @@ public abstract class PlayerEntityMixin extends LivingEntity implements NameTagO
         )
     )
     private void chattriggers$entityDamageSweeping(Entity target, CallbackInfo ci) {
-        if (getWorld().isClient) {
+        if (getWorld().isClient && JSLoader.hasTriggers(TriggerType.ENTITY_DAMAGE)) {
             TriggerType.ENTITY_DAMAGE.triggerAll(com.chattriggers.ctjs.api.entity.Entity.fromMC(target));
         }
     }
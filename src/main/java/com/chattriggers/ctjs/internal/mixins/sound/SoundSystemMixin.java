@@ -2,6 +2,7 @@ package com.chattriggers.ctjs.internal.mixins.sound;
 
 import com.chattriggers.ctjs.api.triggers.TriggerType;
 import com.chattriggers.ctjs.api.vec.Vec3f;
+import com.chattriggers.ctjs.internal.engine.JSLoader;
 import net.minecraft.client.sound.SoundInstance;
 import net.minecraft.client.sound.SoundSystem;
 import org.spongepowered.asm.mixin.Mixin;
@@ -13,6 +14,9 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 public class SoundSystemMixin {
     @Inject(method = "play(Lnet/minecraft/client/sound/SoundInstance;)V", at = @At("HEAD"), cancellable = true)
     private void injectPlay(SoundInstance sound, CallbackInfo ci) {
+        if (!JSLoader.hasTriggers(TriggerType.SOUND_PLAY))
+            return;
+
         float volume = 0f;
         float pitch = 0f;
 
@@ -8,13 +8,19 @@ import com.chattriggers.ctjs.api.client.Sound
 import com.chattriggers.ctjs.api.commands.DynamicCommands
 import com.chattriggers.ctjs.api.message.ChatLib
 import com.chattriggers.ctjs.api.render.Image
+import com.chattriggers.ctjs.api.render.Mesh
 import com.chattriggers.ctjs.api.triggers.TriggerType
 import com.chattriggers.ctjs.api.world.Scoreboard
 import com.chattriggers.ctjs.api.world.World
 import com.chattriggers.ctjs.engine.Console
 import com.chattriggers.ctjs.engine.Register
 import com.chattriggers.ctjs.internal.commands.StaticCommand
+import com.chattriggers.ctjs.internal.engine.JSLoader
+import com.chattriggers.ctjs.internal.engine.JSTimers
+import com.chattriggers.ctjs.internal.engine.ModuleThreads
+import com.chattriggers.ctjs.internal.engine.PacketDispatcher
 import com.chattriggers.ctjs.internal.engine.module.ModuleManager
+import com.chattriggers.ctjs.internal.engine.module.ModuleWatcher
 import com.chattriggers.ctjs.internal.utils.Initializer
 import kotlinx.serialization.json.Json
 import net.fabricmc.api.ClientModInitializer
@@ -25,6 +31,7 @@ import java.net.URL
 import java.net.URLConnection
 import java.security.MessageDigest
 import java.util.*
+import java.util.concurrent.CopyOnWriteArrayList
 import kotlin.concurrent.thread
 
 class CTJS : ClientModInitializer {
@@ -70,8 +77,14 @@ class CTJS : ClientModInitializer {
         var isLoaded = true
             private set
 
+        // True from the start of load() until every module has been run again
+        @Volatile
+        internal var isLoading = false
+            private set
+
         internal val images = mutableListOf<Image>()
         internal val sounds = mutableListOf<Sound>()
+        internal val meshes = CopyOnWriteArrayList<Mesh>()
         internal val isDevelopment = FabricLoader.getInstance().isDevelopmentEnvironment
 
         internal val json = Json {
@@ -95,9 +108,13 @@ class CTJS : ClientModInitializer {
 
             isLoaded = false
 
+            ModuleWatcher.stop()
             ModuleManager.teardown()
             KeyBind.clearKeyBinds()
             Register.clearCustomTriggers()
+            JSTimers.clearAll()
+            PacketDispatcher.clear()
+            ModuleThreads.stopAll(timeoutMillis = 500)
             StaticCommand.unregisterAll()
             DynamicCommands.unregisterAll()
 
@@ -107,6 +124,7 @@ class CTJS : ClientModInitializer {
             Client.scheduleTask {
                 images.forEach(Image::destroy)
                 sounds.forEach(Sound::destroy)
+                meshes.forEach(Mesh::destroy)
 
                 images.clear()
                 sounds.clear()
@@ -116,8 +134,34 @@ class CTJS : ClientModInitializer {
                 ChatLib.chat("&7Unloaded ChatTriggers")
         }
 
+        /**
+         * Releases everything [module] registered, without affecting any other module
+         */
+        internal fun unloadModule(module: String) {
+            JSLoader.removeTriggers(module)
+            KeyBind.removeKeyBinds(module)
+            Register.clearCustomTriggers(module)
+            JSTimers.clearModule(module)
+            ModuleThreads.stopModule(module, timeoutMillis = 500)
+            StaticCommand.unregisterAll(module)
+            DynamicCommands.unregisterAll(module)
+
+            Client.scheduleTask {
+                images.filter { it.module == module }.forEach {
+                    it.destroy()
+                    images.remove(it)
+                }
+                sounds.filter { it.module == module }.forEach {
+                    it.destroy()
+                    sounds.remove(it)
+                }
+                meshes.filter { it.module == module }.forEach(Mesh::destroy)
+            }
+        }
+
         @JvmStatic
         fun load(asCommand: Boolean = true) {
+            isLoading = true
             Client.getMinecraft().options.write()
             unload(asCommand = false)
 
@@ -125,21 +169,25 @@ class CTJS : ClientModInitializer {
                 ChatLib.chat("&cReloading ChatTriggers...")
 
             thread {
-                ModuleManager.setup()
-                Client.getMinecraft().options.load()
+                try {
+                    ModuleManager.setup()
+                    Client.getMinecraft().options.load()
 
-                // Need to set isLoaded to true before running modules, otherwise custom triggers
-                // activated at the top level will not work
-                isLoaded = true
+                    // Need to set isLoaded to true before running modules, otherwise custom triggers
+                    // activated at the top level will not work
+                    isLoaded = true
 
-                ModuleManager.entryPass()
+                    ModuleManager.entryPass()
 
-                if (asCommand)
-                    ChatLib.chat("&aDone reloading!")
+                    if (asCommand)
+                        ChatLib.chat("&aDone reloading!")
 
-                TriggerType.GAME_LOAD.triggerAll()
-                if (World.isLoaded())
-                    TriggerType.WORLD_LOAD.triggerAll()
+                    TriggerType.GAME_LOAD.triggerAll()
+                    if (World.isLoaded())
+                        TriggerType.WORLD_LOAD.triggerAll()
+                } finally {
+                    isLoading = false
+                }
             }
         }
     }
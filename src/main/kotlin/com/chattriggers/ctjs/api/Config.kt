@@ -2,6 +2,7 @@ package com.chattriggers.ctjs.api
 
 import com.chattriggers.ctjs.CTJS
 import com.chattriggers.ctjs.engine.Console
+import com.chattriggers.ctjs.internal.engine.module.ModuleWatcher
 import com.chattriggers.ctjs.internal.utils.CategorySorting
 import gg.essential.vigilance.Vigilant
 import gg.essential.vigilance.data.Property
@@ -47,6 +48,86 @@ object Config : Vigilant(File(CTJS.configLocation, "ChatTriggers.toml"), sorting
     )
     var autoUpdateModules = true
 
+    @JvmStatic
+    @Property(
+        PropertyType.NUMBER,
+        name = "Module update check interval",
+        category = "General",
+        description = "Minutes to reuse the last update check for a module before asking the server again. " +
+            "0 to check every time CT loads",
+        min = 0,
+        max = 1440,
+    )
+    var moduleUpdateCheckInterval = 15
+
+    @JvmStatic
+    @Property(
+        PropertyType.SWITCH,
+        name = "Reload modules on change",
+        category = "General",
+        description = "Watch the modules folder and reload only the modules whose scripts change, along with " +
+            "the modules that depend on them",
+    )
+    var autoReloadModules = false
+
+    @JvmStatic
+    @Property(
+        PropertyType.NUMBER,
+        name = "Step catch-up limit",
+        category = "General",
+        description = "The most times a step trigger may run in one frame to catch up after the game freezes",
+        min = 1,
+        max = 1000,
+    )
+    var stepMaxCatchUp = 5
+
+    @JvmStatic
+    @Property(
+        PropertyType.NUMBER,
+        name = "Step frame budget",
+        category = "General",
+        description = "Milliseconds per frame that all step triggers may use before the rest are deferred. " +
+            "0 for no limit",
+        min = 0,
+        max = 1000,
+    )
+    var stepFrameBudget = 0
+
+    @JvmStatic
+    @Property(
+        PropertyType.NUMBER,
+        name = "Module thread limit",
+        category = "General",
+        description = "Maximum number of threads a single module can run at once. Additional threads wait until " +
+            "one finishes",
+        min = 1,
+        max = 1024,
+    )
+    var moduleThreadLimit = 32
+
+    @JvmStatic
+    @Property(
+        PropertyType.SWITCH,
+        name = "Batch overlay rendering",
+        category = "General",
+        description = "Draw consecutive shapes, text, and images of the same type from renderOverlay triggers " +
+            "with a single draw call. Batched drawing is not tinted by Renderer.colorize, so only enable this if " +
+            "your modules don't rely on it",
+    )
+    var batchOverlayRendering = false
+
+    @JvmStatic
+    @Property(
+        PropertyType.NUMBER,
+        name = "Packet queue size",
+        category = "General",
+        description = "The most packets that can wait for async or client thread packet triggers. Packets that " +
+            "arrive while the queue is full are skipped",
+        min = 64,
+        max = 65536,
+    )
+    var packetQueueSize = 4096
+
     @JvmStatic
     @Property(
         PropertyType.SWITCH,
@@ -154,6 +235,12 @@ object Config : Vigilant(File(CTJS.configLocation, "ChatTriggers.toml"), sorting
         addDependency("consoleErrorColor", "customTheme")
         addDependency("consoleWarningColor", "customTheme")
 
+        registerListener<Boolean>("autoReloadModules") {
+            if (it && CTJS.isLoaded) {
+                ModuleWatcher.start()
+            } else ModuleWatcher.stop()
+        }
+
         listenToConsoleProperty(::clearConsoleOnLoad)
         listenToConsoleProperty(::openConsoleOnError)
         listenToConsoleProperty(::consoleFiraCodeFont)
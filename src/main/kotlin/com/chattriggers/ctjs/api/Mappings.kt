@@ -1,6 +1,8 @@
 package com.chattriggers.ctjs.api
 
 import com.chattriggers.ctjs.CTJS
+import com.chattriggers.ctjs.engine.printTraceToConsole
+import com.chattriggers.ctjs.internal.launch.MappingsCache
 import com.chattriggers.ctjs.internal.utils.urlEncode
 import net.fabricmc.loader.api.FabricLoader
 import net.fabricmc.mappingio.MappingReader
@@ -15,6 +17,7 @@ import org.spongepowered.asm.service.MixinService
 import java.io.ByteArrayInputStream
 import java.net.URI
 import java.net.URL
+import java.util.concurrent.ConcurrentHashMap
 import java.nio.file.Files
 import java.util.zip.ZipFile
 
@@ -27,12 +30,69 @@ object Mappings {
     // If this is changed, also change the Java.type function in mixinProvidedLibs.js
     internal val mappedPackages = setOf("Lnet/minecraft/", "Lcom/mojang/blaze3d/")
 
-    private val unmappedClasses = mutableMapOf<String, MappedClass>()
+    // The number of decoded classes kept in memory. Scripts typically only touch a few
+    // hundred classes, and anything evicted can be decoded again from the index.
+    private const val MATERIALIZED_CLASS_LIMIT = 1024
+
+    private var index: MappingsCache.MappingIndex? = null
+
+    // Classes which aren't backed by the index, such as those read from bytecode by
+    // getUnmappedClass. These are never evicted.
+    private val extraClasses = ConcurrentHashMap<String, MappedClass>()
+
+    private val materializedClasses = object : LinkedHashMap<String, MappedClass>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, MappedClass>?) =
+            size > MATERIALIZED_CLASS_LIMIT
+    }
+
     private val mappedToUnmappedClassNames = mutableMapOf<String, String>()
 
     internal fun initialize() {
         val container = FabricLoader.getInstance().getModContainer(CTJS.MOD_ID)
         val mappingVersion = container.get().metadata.getCustomValue("${CTJS.MOD_ID}:yarn-mappings").asString
+
+        index = MappingsCache.read(mappingVersion) ?: run {
+            val classes = downloadMappings(mappingVersion)
+
+            try {
+                MappingsCache.write(mappingVersion, classes)
+            } catch (e: Exception) {
+                e.printTraceToConsole()
+            }
+
+            // Prefer reading back from the cache so the fully decoded tree can be collected
+            MappingsCache.read(mappingVersion) ?: run {
+                classes.associateByTo(extraClasses) { it.name.original }
+                null
+            }
+        }
+
+        val classNames = index?.classNames?.values ?: extraClasses.values.map(MappedClass::name)
+        classNames.forEach { name ->
+            if (CTJS.isDevelopment) {
+                mappedToUnmappedClassNames[name.original] = name.original
+            } else {
+                mappedToUnmappedClassNames[name.mapped] = name.original
+            }
+        }
+    }
+
+    private fun findClass(unmappedName: String): MappedClass? {
+        extraClasses[unmappedName]?.let { return it }
+        val index = index ?: return null
+
+        synchronized(materializedClasses) {
+            materializedClasses[unmappedName]?.let { return it }
+        }
+
+        val clazz = index.materialize(unmappedName) ?: return null
+        synchronized(materializedClasses) {
+            materializedClasses[unmappedName] = clazz
+        }
+        return clazz
+    }
+
+    private fun downloadMappings(mappingVersion: String): List<MappedClass> {
         val jarName = "yarn-$mappingVersion-v2.jar".urlEncode()
 
         val jarBytes = URI("$YARN_MAPPINGS_URL_PREFIX${mappingVersion.urlEncode()}/$jarName").toURL().readBytes()
@@ -42,11 +102,12 @@ object Mappings {
         val mappingBytes = ZipFile(tempFile).use { file ->
             file.getInputStream(file.getEntry("mappings/mappings.tiny")).readAllBytes()
         }
+        tempFile.delete()
 
         val tree = MemoryMappingTree()
         MappingReader.read(ByteArrayInputStream(mappingBytes).bufferedReader(), tree)
 
-        tree.classes.forEach { clazz ->
+        return tree.classes.map { clazz ->
             val fields = mutableMapOf<String, MappedField>()
 
             clazz.fields.forEach { field ->
@@ -80,24 +141,18 @@ object Mappings {
                 )
             }
 
-            unmappedClasses[clazz.unmappedName] = MappedClass(
+            MappedClass(
                 name = Mapping.fromMapped(clazz),
                 fields,
                 methods
             )
-
-            if (CTJS.isDevelopment) {
-                mappedToUnmappedClassNames[clazz.unmappedName] = clazz.unmappedName
-            } else {
-                mappedToUnmappedClassNames[clazz.mappedName] = clazz.unmappedName
-            }
         }
     }
 
     internal fun getMappedClass(unmappedClassName: String): MappedClass? {
         var name = normalizeClassName(unmappedClassName)
         mappedToUnmappedClassNames[name]?.also { name = it }
-        return unmappedClasses[name]
+        return findClass(name)
     }
 
     internal fun getUnmappedClass(unmappedClassName: String): MappedClass {
@@ -149,11 +204,17 @@ object Mappings {
 
         mappedToUnmappedClassNames[name] = name
         return MappedClass(Mapping(name, name), fields, methods).also {
-            unmappedClasses[name] = it
+            extraClasses[name] = it
         }
     }
 
-    internal fun getMappedClassName(unmappedClassName: String) = getMappedClass(unmappedClassName)?.name?.value
+    internal fun getMappedClassName(unmappedClassName: String): String? {
+        var name = normalizeClassName(unmappedClassName)
+        mappedToUnmappedClassNames[name]?.also { name = it }
+
+        // Only the name is needed, so avoid decoding the whole class
+        return (extraClasses[name]?.name ?: index?.classNames?.get(name))?.value
+    }
 
     /**
      * Gets a classes unmapped class name, or throws an error if it is not mapped
@@ -229,13 +290,13 @@ object Mappings {
 
             val unmappedSuperClass = mappedToUnmappedClassNames[classInfo.superName]
             if (unmappedSuperClass != null) {
-                return unmappedClasses[unmappedSuperClass]?.findMethods(name, classInfo.superClass)
+                return findClass(unmappedSuperClass)?.findMethods(name, classInfo.superClass)
             }
 
             val methods = mutableListOf<MappedMethod>()
             for (itf in classInfo.interfaces) {
                 val unmappedInterface = mappedToUnmappedClassNames[itf] ?: continue
-                unmappedClasses[unmappedInterface]?.findMethods(name, null)?.let { methods += it }
+                findClass(unmappedInterface)?.findMethods(name, null)?.let { methods += it }
             }
 
             return if (methods.isEmpty()) null else methods
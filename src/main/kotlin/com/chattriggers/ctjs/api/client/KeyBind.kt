@@ -4,6 +4,7 @@ import com.chattriggers.ctjs.api.triggers.RegularTrigger
 import com.chattriggers.ctjs.api.triggers.TriggerType
 import com.chattriggers.ctjs.api.world.World
 import com.chattriggers.ctjs.internal.BoundKeyUpdater
+import com.chattriggers.ctjs.internal.engine.module.ModuleManager
 import com.chattriggers.ctjs.internal.mixins.GameOptionsAccessor
 import com.chattriggers.ctjs.internal.mixins.KeyBindingAccessor
 import com.chattriggers.ctjs.internal.utils.Initializer
@@ -22,6 +23,8 @@ class KeyBind {
 
     private var down: Boolean = false
 
+    private val module = ModuleManager.getCallingModule()
+
     /**
      * Creates a new keybind, editable in the user's controls.
      *
@@ -197,6 +200,10 @@ class KeyBind {
             keyBinds.clear()
         }
 
+        internal fun removeKeyBinds(module: String) {
+            keyBinds.filter { it.module == module }.forEach(::removeKeyBind)
+        }
+
         private fun removeKeyBinding(keyBinding: KeyBinding) {
             Client.getMinecraft().options.asMixin<GameOptionsAccessor>().setAllKeys(
                 ArrayUtils.removeElement(
@@ -3,6 +3,7 @@ package com.chattriggers.ctjs.api.client
 import com.chattriggers.ctjs.CTJS
 import com.chattriggers.ctjs.api.CTWrapper
 import com.chattriggers.ctjs.api.world.World
+import com.chattriggers.ctjs.internal.engine.module.ModuleManager
 import com.chattriggers.ctjs.internal.mixins.AbstractSoundInstanceAccessor
 import com.chattriggers.ctjs.internal.mixins.sound.SoundAccessor
 import com.chattriggers.ctjs.internal.mixins.sound.SoundManagerAccessor
@@ -53,6 +54,7 @@ import kotlin.io.path.nameWithoutExtension
  */
 class Sound(private val config: NativeObject) {
     private lateinit var identifier: Identifier
+    internal val module = ModuleManager.getCallingModule()
     private lateinit var soundImpl: SoundImpl
     private lateinit var sound: MCSound
     private var isCustom = false
@@ -82,14 +82,40 @@ class TextComponent private constructor(
      * Returns the text of all parts concatenated without formatting codes.
      */
     val unformattedText by lazy {
-        parts.fold("") { prev, curr -> prev + curr.text }
+        buildString {
+            parts.forEach { append(it.text) }
+        }
     }
 
     /**
      * Returns the text of all parts concatenated with formatting codes.
      */
     val formattedText by lazy {
-        parts.fold("") { prev, curr -> prev + curr.style_.formatCodes() + curr.text }
+        buildString {
+            parts.forEach {
+                appendFormatCodes(it.style_, '§')
+                append(it.text)
+            }
+        }
+    }
+
+    /**
+     * Builds the text that chat trigger criteria are matched against in a single pass.
+     * Formatting codes use '&' instead of '§', and newlines are replaced by "->newLine<-".
+     */
+    internal fun toCriteriaText(formatted: Boolean) = buildString {
+        parts.forEach {
+            if (formatted)
+                appendFormatCodes(it.style_, '&')
+
+            for (ch in it.text) {
+                when {
+                    ch == '\n' -> append("->newLine<-")
+                    ch == '§' && formatted -> append('&')
+                    else -> append(ch)
+                }
+            }
+        }
     }
 
     /**
@@ -456,18 +482,18 @@ class TextComponent private constructor(
                 )
         }
 
-        private fun Style.formatCodes() = buildString {
-            append("§r")
+        private fun StringBuilder.appendFormatCodes(style: Style, prefix: Char) {
+            append(prefix).append('r')
 
             when {
-                isBold -> append("§l")
-                isItalic -> append("§o")
-                isUnderlined -> append("§n")
-                isStrikethrough -> append("§m")
-                isObfuscated -> append("§k")
+                style.isBold -> append(prefix).append('l')
+                style.isItalic -> append(prefix).append('o')
+                style.isUnderlined -> append(prefix).append('n')
+                style.isStrikethrough -> append(prefix).append('m')
+                style.isObfuscated -> append(prefix).append('k')
             }
 
-            color?.let(colorToFormatChar::get)?.run(::append)
+            style.color?.let(colorToFormatChar::get)?.let { append(prefix).append(it.code) }
         }
 
         private fun makeClickEvent(clickEvent: Any?): ClickEvent? {
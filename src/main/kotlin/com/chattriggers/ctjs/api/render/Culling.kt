@@ -0,0 +1,117 @@
+package com.chattriggers.ctjs.api.render
+
+import com.chattriggers.ctjs.api.entity.BlockEntity
+import com.chattriggers.ctjs.api.entity.Entity
+import com.chattriggers.ctjs.api.vec.Vec3f
+import com.chattriggers.ctjs.api.vec.Vec3i
+import com.chattriggers.ctjs.MCBlockEntity
+import com.chattriggers.ctjs.MCEntity
+import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderContext
+import net.minecraft.client.render.Frustum
+import net.minecraft.util.math.Box
+import net.minecraft.util.math.Vec3d
+
+/**
+ * Checks whether things in the world can be seen by the camera, so modules can skip
+ * drawing (and computing) anything that is off-screen or too far away.
+ *
+ * The camera's view is captured once before every `preRenderWorld` and `postRenderWorld`
+ * trigger dispatch, and all checks use that snapshot. Until the first world render,
+ * everything is considered visible.
+ */
+object Culling {
+    // Updated on the render thread, but may be read from module threads
+    @Volatile
+    private var frustum: Frustum? = null
+    @Volatile
+    private var cameraPos: Vec3d? = null
+
+    internal fun update(ctx: WorldRenderContext) {
+        val camera = ctx.camera().pos
+        cameraPos = camera
+
+        // The vanilla frustum isn't set up yet when the frame starts
+        frustum = ctx.frustum() ?: Frustum(ctx.positionMatrix(), ctx.projectionMatrix()).apply {
+            setPosition(camera.x, camera.y, camera.z)
+        }
+    }
+
+    /**
+     * @return whether any part of [box] is inside the camera's view
+     */
+    @JvmStatic
+    fun isVisible(box: Box) = frustum?.isVisible(box) ?: true
+
+    /**
+     * @return whether any part of the box between the two corners is inside the camera's view
+     */
+    @JvmStatic
+    fun isVisible(minX: Double, minY: Double, minZ: Double, maxX: Double, maxY: Double, maxZ: Double) =
+        isVisible(Box(minX, minY, minZ, maxX, maxY, maxZ))
+
+    /**
+     * @return whether any part of the sphere at ([x], [y], [z]) with the given [radius] might be
+     *         inside the camera's view. This is checked using the sphere's bounding box, so it
+     *         can be true for spheres that are just outside the view.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun isVisible(x: Double, y: Double, z: Double, radius: Double = 0.0) =
+        isVisible(Box(x - radius, y - radius, z - radius, x + radius, y + radius, z + radius))
+
+    /**
+     * @return whether any part of [entity]'s bounding box is inside the camera's view
+     */
+    @JvmStatic
+    fun isVisible(entity: Entity) = isVisible(entity.toMC().visibilityBoundingBox)
+
+    /**
+     * @return whether the point ([x], [y], [z]) is at most [distance] blocks away from the camera
+     */
+    @JvmStatic
+    fun isInRange(x: Double, y: Double, z: Double, distance: Double): Boolean {
+        val camera = cameraPos ?: return true
+        return camera.squaredDistanceTo(x, y, z) <= distance * distance
+    }
+
+    /**
+     * Filters [items] down to the ones that are inside the camera's view, and optionally at
+     * most [maxDistance] blocks away from the camera. Items can be entities, block entities,
+     * block positions, or [Vec3f]s. Block positions are checked as a whole block, and [Vec3f]s
+     * as a single point.
+     *
+     * @param items the things to filter
+     * @param maxDistance the furthest away an item can be, or 0 for no limit
+     * @return a new list containing only the visible items, in the same order
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun <T> filterVisible(items: List<T>, maxDistance: Double = 0.0): List<T> {
+        return items.filter {
+            val box = getBox(it)
+            if (maxDistance > 0) {
+                val center = box.center
+                if (!isInRange(center.x, center.y, center.z, maxDistance))
+                    return@filter false
+            }
+            isVisible(box)
+        }
+    }
+
+    private fun getBox(item: Any?): Box = when (item) {
+        is Entity -> item.toMC().visibilityBoundingBox
+        is MCEntity -> item.visibilityBoundingBox
+        is BlockEntity -> Box(item.toMC().pos)
+        is MCBlockEntity -> Box(item.pos)
+        is Vec3i -> Box(
+            item.x.toDouble(),
+            item.y.toDouble(),
+            item.z.toDouble(),
+            item.x + 1.0,
+            item.y + 1.0,
+            item.z + 1.0,
+        )
+        is Vec3f -> Vec3d(item.x.toDouble(), item.y.toDouble(), item.z.toDouble()).let { Box(it, it) }
+        else -> throw IllegalArgumentException("Cannot check the visibility of ${item?.let { it::class.simpleName }}")
+    }
+}
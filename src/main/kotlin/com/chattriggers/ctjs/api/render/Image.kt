@@ -2,6 +2,7 @@ package com.chattriggers.ctjs.api.render
 
 import com.chattriggers.ctjs.CTJS
 import com.chattriggers.ctjs.api.client.Client
+import com.chattriggers.ctjs.internal.engine.module.ModuleManager
 import net.minecraft.client.texture.NativeImage
 import net.minecraft.client.texture.NativeImageBackedTexture
 import net.minecraft.util.Identifier
@@ -19,6 +20,7 @@ class Image(var image: BufferedImage?) {
     private val textureHeight = image?.height ?: 0
     private val aspectRatio = if (textureHeight != 0) textureHeight.toFloat() / textureWidth else 0f
     private var identifier: Identifier? = null
+    internal val module = ModuleManager.getCallingModule()
 
     init {
         CTJS.images.add(this)
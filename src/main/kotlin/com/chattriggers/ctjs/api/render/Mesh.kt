@@ -0,0 +1,271 @@
+package com.chattriggers.ctjs.api.render
+
+import com.chattriggers.ctjs.CTJS
+import com.chattriggers.ctjs.api.client.Client
+import com.chattriggers.ctjs.internal.engine.module.ModuleManager
+import com.mojang.blaze3d.systems.RenderSystem
+import gg.essential.elementa.dsl.component1
+import gg.essential.elementa.dsl.component2
+import gg.essential.elementa.dsl.component3
+import gg.essential.elementa.dsl.component4
+import net.minecraft.client.gl.ShaderProgram
+import net.minecraft.client.gl.VertexBuffer
+import net.minecraft.client.render.BufferBuilder
+import net.minecraft.client.render.BuiltBuffer
+import net.minecraft.client.render.GameRenderer
+import net.minecraft.client.render.VertexFormat
+import net.minecraft.client.util.BufferAllocator
+import org.joml.Matrix4f
+import java.awt.Color
+
+/**
+ * A piece of world geometry that is uploaded to the GPU once and can then be drawn every
+ * frame without sending its vertices again. Create one with [Renderer3d.createMesh].
+ *
+ * Vertices are added the same way as with [Renderer3d.pos], [Renderer3d.color], etc., and
+ * are uploaded when [build] is called. To change the geometry later, call [update], add the
+ * new vertices, and call [build] again. The mesh keeps drawing its old geometry until then.
+ *
+ * Meshes hold GPU memory, so they should be destroyed with [destroy] once they are no
+ * longer needed. Any meshes that are left are destroyed when their module is unloaded.
+ */
+class Mesh internal constructor(
+    private val drawMode: Renderer.DrawMode,
+    private val vertexFormat: Renderer.VertexFormat,
+) {
+    private var vertexBuffer: VertexBuffer? = null
+    private var allocator: BufferAllocator? = null
+    private var builder: BufferBuilder? = null
+    private var vertexCount = 0
+
+    // Positions are stored relative to the first vertex, since floats lose too much precision
+    // far away from the world origin
+    private var originX = 0.0
+    private var originY = 0.0
+    private var originZ = 0.0
+    private var builtOriginX = 0.0
+    private var builtOriginY = 0.0
+    private var builtOriginZ = 0.0
+
+    private var destroyed = false
+    internal val module = ModuleManager.getCallingModule()
+
+    init {
+        require(vertexFormat in SHADERS) { "Meshes do not support the vertex format $vertexFormat" }
+
+        CTJS.meshes.add(this)
+        update()
+    }
+
+    /**
+     * Discards any vertices added since the last [build] and starts collecting new ones.
+     *
+     * @return [Mesh] to allow for method chaining
+     */
+    fun update() = apply {
+        check(!destroyed) { "Cannot update a mesh that has been destroyed" }
+
+        builder?.endNullable()?.close()
+        allocator?.close()
+
+        val newAllocator = BufferAllocator(INITIAL_BUFFER_SIZE)
+        allocator = newAllocator
+        builder = BufferBuilder(newAllocator, VertexFormat.DrawMode.valueOf(drawMode.name), vertexFormat.toMC())
+        vertexCount = 0
+    }
+
+    /**
+     * Adds a new vertex at the given world position
+     *
+     * @return [Mesh] to allow for method chaining
+     */
+    fun pos(x: Double, y: Double, z: Double) = apply {
+        val builder = getBuilder()
+
+        if (vertexCount++ == 0) {
+            originX = x
+            originY = y
+            originZ = z
+        }
+
+        builder.vertex((x - originX).toFloat(), (y - originY).toFloat(), (z - originZ).toFloat())
+    }
+
+    /**
+     * Sets the texture location on the last defined vertex
+     *
+     * @return [Mesh] to allow for method chaining
+     */
+    fun tex(u: Float, v: Float) = apply {
+        getBuilder().texture(u, v)
+    }
+
+    /**
+     * Sets the color of the last defined vertex, with each component between 0 and 1
+     *
+     * @return [Mesh] to allow for method chaining
+     */
+    @JvmOverloads
+    fun color(r: Float, g: Float, b: Float, a: Float = 1f) = apply {
+        getBuilder().color(r, g, b, a)
+    }
+
+    /**
+     * Sets the color of the last defined vertex, with each component between 0 and 255
+     *
+     * @return [Mesh] to allow for method chaining
+     */
+    @JvmOverloads
+    fun color(r: Int, g: Int, b: Int, a: Int = 255) = apply {
+        getBuilder().color(r, g, b, a)
+    }
+
+    /**
+     * Sets the color of the last defined vertex
+     *
+     * @param color the color value, can use [Renderer.getColor] to get this
+     * @return [Mesh] to allow for method chaining
+     */
+    fun color(color: Long) = apply {
+        val (r, g, b, a) = Color(color.toInt(), true)
+        color(r, g, b, a)
+    }
+
+    /**
+     * Sets the normal of the last defined vertex. This is needed for [Renderer.VertexFormat.LINES]
+     *
+     * @return [Mesh] to allow for method chaining
+     */
+    fun normal(x: Float, y: Float, z: Float) = apply {
+        getBuilder().normal(x, y, z)
+    }
+
+    /**
+     * Sets the light location on the last defined vertex
+     *
+     * @return [Mesh] to allow for method chaining
+     */
+    fun light(u: Int, v: Int) = apply {
+        getBuilder().light(u, v)
+    }
+
+    /**
+     * Uploads the vertices added since the last call to [update] to the GPU. If this isn't
+     * called on the render thread, the upload happens before the next frame is rendered.
+     *
+     * @return [Mesh] to allow for method chaining
+     */
+    fun build() = apply {
+        val built = getBuilder().endNullable()
+        val builtAllocator = allocator
+        val (x, y, z) = Triple(originX, originY, originZ)
+        builder = null
+        allocator = null
+
+        val upload = {
+            if (destroyed) {
+                built?.close()
+            } else {
+                upload(built)
+                builtOriginX = x
+                builtOriginY = y
+                builtOriginZ = z
+            }
+            builtAllocator?.close()
+        }
+
+        if (RenderSystem.isOnRenderThread()) {
+            upload()
+        } else RenderSystem.recordRenderCall(upload)
+    }
+
+    /**
+     * Draws the mesh as it was when [build] was last called. This should be called from a
+     * `preRenderWorld` or `postRenderWorld` trigger.
+     */
+    fun draw() {
+        val vertexBuffer = vertexBuffer ?: return
+        val shader = SHADERS[vertexFormat]!!() ?: return
+        val camera = Client.getMinecraft().gameRenderer.camera.pos
+        Renderer.flushBatch()
+
+        val modelView = Matrix4f(RenderSystem.getModelViewMatrix())
+            .mul(Renderer.matrixStack.peek().model)
+            .translate(
+                (builtOriginX - camera.x).toFloat(),
+                (builtOriginY - camera.y).toFloat(),
+                (builtOriginZ - camera.z).toFloat(),
+            )
+
+        Renderer.enableBlend()
+            .disableCull()
+        Renderer.tryBlendFuncSeparate(770, 771, 1, 0)
+
+        vertexBuffer.bind()
+        vertexBuffer.draw(modelView, RenderSystem.getProjectionMatrix(), shader)
+        VertexBuffer.unbind()
+
+        Renderer.colorize(1f, 1f, 1f, 1f)
+            .disableBlend()
+            .enableCull()
+    }
+
+    /**
+     * Frees the GPU memory used by this mesh. It can't be used again afterwards.
+     */
+    fun destroy() {
+        if (destroyed)
+            return
+        destroyed = true
+        CTJS.meshes.remove(this)
+
+        val vertexBuffer = vertexBuffer
+        val builder = builder
+        val allocator = allocator
+        this.vertexBuffer = null
+        this.builder = null
+        this.allocator = null
+
+        val release = {
+            vertexBuffer?.close()
+            builder?.endNullable()?.close()
+            allocator?.close()
+        }
+
+        if (RenderSystem.isOnRenderThread()) {
+            release()
+        } else RenderSystem.recordRenderCall(release)
+    }
+
+    private fun getBuilder(): BufferBuilder {
+        check(!destroyed) { "Cannot modify a mesh that has been destroyed" }
+        return builder ?: error("Call Mesh.update() before adding vertices to a mesh that has already been built")
+    }
+
+    private fun upload(built: BuiltBuffer?) {
+        if (built == null) {
+            // No vertices, so there is nothing to draw
+            vertexBuffer?.close()
+            vertexBuffer = null
+            return
+        }
+
+        val vertexBuffer = vertexBuffer ?: VertexBuffer(VertexBuffer.Usage.STATIC).also { vertexBuffer = it }
+        vertexBuffer.bind()
+        vertexBuffer.upload(built)
+        VertexBuffer.unbind()
+    }
+
+    private companion object {
+        private const val INITIAL_BUFFER_SIZE = 256 * 1024
+
+        private val SHADERS: Map<Renderer.VertexFormat, () -> ShaderProgram?> = mapOf(
+            Renderer.VertexFormat.POSITION to GameRenderer::getPositionProgram,
+            Renderer.VertexFormat.POSITION_COLOR to GameRenderer::getPositionColorProgram,
+            Renderer.VertexFormat.POSITION_TEXTURE to GameRenderer::getPositionTexProgram,
+            Renderer.VertexFormat.POSITION_TEXTURE_COLOR to GameRenderer::getPositionTexColorProgram,
+            Renderer.VertexFormat.POSITION_COLOR_TEXTURE_LIGHT to GameRenderer::getPositionColorTexLightmapProgram,
+            Renderer.VertexFormat.LINES to GameRenderer::getRenderTypeLinesProgram,
+        )
+    }
+}
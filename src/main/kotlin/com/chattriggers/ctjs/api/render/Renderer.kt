@@ -6,11 +6,13 @@ import com.chattriggers.ctjs.api.entity.PlayerMP
 import com.chattriggers.ctjs.api.message.ChatLib
 import com.chattriggers.ctjs.api.vec.Vec3f
 import com.chattriggers.ctjs.internal.mixins.EntityRenderDispatcherAccessor
+import com.chattriggers.ctjs.internal.render.RecordedMesh
 import com.chattriggers.ctjs.MCVertexFormat
 import com.chattriggers.ctjs.engine.LogType
 import com.chattriggers.ctjs.engine.printToConsole
 import com.chattriggers.ctjs.internal.utils.asMixin
 import com.chattriggers.ctjs.internal.utils.getOrDefault
+import com.chattriggers.ctjs.internal.utils.toFloatArray
 import com.chattriggers.ctjs.internal.utils.toRadians
 import com.mojang.blaze3d.systems.RenderSystem
 import gg.essential.elementa.dsl.component1
@@ -23,11 +25,15 @@ import gg.essential.universal.UMinecraft
 import net.minecraft.client.MinecraftClient
 import net.minecraft.client.font.TextRenderer
 import net.minecraft.client.network.AbstractClientPlayerEntity
+import net.minecraft.client.render.BufferBuilder
 import net.minecraft.client.render.DiffuseLighting
+import net.minecraft.client.render.RenderLayer
 import net.minecraft.client.render.Tessellator
+import net.minecraft.client.render.VertexConsumer
 import net.minecraft.client.render.VertexConsumerProvider
 import net.minecraft.client.render.VertexFormats
 import net.minecraft.client.render.entity.EntityRendererFactory
+import net.minecraft.client.util.BufferAllocator
 import net.minecraft.client.util.math.MatrixStack
 import org.joml.Matrix4f
 import org.joml.Quaternionf
@@ -56,6 +62,9 @@ object Renderer {
 
     internal var matrixPushCounter = 0
 
+    private var batchDepth = 0
+    private val batchConsumers by lazy(::BatchConsumers)
+
     @JvmField
     val screen = ScreenWrapper()
 
@@ -301,6 +310,71 @@ object Renderer {
         else color
     }
 
+    /**
+     * Starts collecting the geometry of [drawRect], [drawLine], [drawCircle], [drawString],
+     * and [drawImage] instead of drawing it immediately. Consecutive calls that use the same
+     * render layer, such as many rectangles in a row, are then drawn together by a single draw
+     * call. Everything is still drawn in the order it was called in, so overlapping shapes,
+     * text, and images are layered the same as without a batch.
+     *
+     * Batches may be nested, in which case nothing is drawn until the outermost batch ends.
+     * renderOverlay triggers are run inside a batch if enabled in the config.
+     *
+     * Note that anything drawn with [begin] and [draw] or [drawVertices] is still drawn
+     * immediately, after everything batched before it. Batched geometry only uses the colors
+     * it was drawn with, so it is not tinted by [colorize], and state such as [enableBlend]
+     * does not affect it.
+     *
+     * @return [Renderer] to allow for method chaining
+     */
+    @JvmStatic
+    fun beginBatch() = apply {
+        batchDepth++
+    }
+
+    /**
+     * Ends the batch started by [beginBatch], drawing everything in it if this was the
+     * outermost batch
+     *
+     * @return [Renderer] to allow for method chaining
+     */
+    @JvmStatic
+    fun endBatch() = apply {
+        if (batchDepth == 0)
+            return@apply
+
+        if (--batchDepth == 0)
+            batchConsumers.draw()
+    }
+
+    @JvmStatic
+    fun isBatching() = batchDepth > 0
+
+    /**
+     * Draws everything batched so far, so that something drawn immediately ends up on top of it
+     */
+    internal fun flushBatch() {
+        if (isBatching())
+            batchConsumers.draw()
+    }
+
+    /**
+     * Runs [block] inside a batch, making sure it is drawn even if [block] leaves batches open
+     */
+    internal fun batched(block: () -> Unit) {
+        val depth = batchDepth
+        beginBatch()
+
+        try {
+            block()
+        } finally {
+            if (batchDepth > depth + 1)
+                "Warning: Render function missing a call to Renderer.endBatch()".printToConsole(LogType.WARN)
+            batchDepth = depth + 1
+            endBatch()
+        }
+    }
+
     /**
      * Begin drawing with the world renderer
      *
@@ -441,6 +515,20 @@ object Renderer {
     @JvmStatic
     fun draw() = Renderer3d.draw()
 
+    /**
+     * Draws a whole batch of vertices at once, without a separate call for every vertex.
+     * Positions are screen coordinates and still take 3 numbers each, with z usually being 0.
+     *
+     * @param drawMode the GL draw mode
+     * @param vertexFormat the layout of each vertex in [vertices]
+     * @param vertices the vertex data, as a float[], a Float32Array, or an array of numbers
+     * @see Renderer3d.drawVertices
+     */
+    @JvmStatic
+    fun drawVertices(drawMode: DrawMode, vertexFormat: VertexFormat, vertices: Any) {
+        Renderer3d.drawVertices(drawMode, vertexFormat, vertices.toFloatArray(), 0.0, 0.0, 0.0)
+    }
+
     /**
      * Gets a fixed render position from x, y, and z inputs adjusted with partial ticks
      * @param x the X coordinate
@@ -465,6 +553,11 @@ object Renderer {
         if (pos[1] > pos[3])
             Collections.swap(pos, 1, 3)
 
+        if (isBatching()) {
+            batchQuad(color, pos[0], pos[3], pos[2], pos[3], pos[2], pos[1], pos[0], pos[1])
+            return@apply
+        }
+
         begin(vertexFormat = VertexFormat.POSITION_COLOR)
         pos(pos[0], pos[3], 0f).color(color)
         pos(pos[2], pos[3], 0f).color(color)
@@ -486,6 +579,11 @@ object Renderer {
         val i = sin(theta) * (thickness / 2)
         val j = cos(theta) * (thickness / 2)
 
+        if (isBatching()) {
+            batchQuad(color, x1 + i, y1 + j, x2 + i, y2 + j, x2 - i, y2 - j, x1 - i, y1 - j)
+            return
+        }
+
         begin(vertexFormat = VertexFormat.POSITION_COLOR)
         pos(x1 + i, y1 + j, 0f).color(color)
         pos(x2 + i, y2 + j, 0f).color(color)
@@ -510,6 +608,22 @@ object Renderer {
         var circleX = 1f
         var circleY = 0f
 
+        if (isBatching()) {
+            for (i in 0 until steps) {
+                val startX = circleX * radius + x
+                val startY = circleY * radius + y
+                xHolder = circleX
+                circleX = cos * circleX - sin * circleY
+                circleY = sin * xHolder + cos * circleY
+                val endX = circleX * radius + x
+                val endY = circleY * radius + y
+
+                // Each segment is a triangle, drawn as a quad with a repeated vertex
+                batchQuad(color, x, y, startX, startY, endX, endY, endX, endY)
+            }
+            return
+        }
+
         begin(DrawMode.TRIANGLE_STRIP, VertexFormat.POSITION_COLOR)
 
         for (i in 0..steps) {
@@ -537,7 +651,7 @@ object Renderer {
         val fr = getFontRenderer()
         var newY = y
 
-        val immediate = Client.getMinecraft().bufferBuilders.entityVertexConsumers
+        val consumers = if (isBatching()) batchConsumers else Client.getMinecraft().bufferBuilders.entityVertexConsumers
         splitText(text).lines.forEach {
             fr.draw(
                 it,
@@ -546,7 +660,7 @@ object Renderer {
                 color.toInt(),
                 shadow,
                 matrixStack.toMC().peek().positionMatrix,
-                immediate,
+                consumers,
                 TextRenderer.TextLayerType.NORMAL,
                 0,
                 0xf000f0,
@@ -554,7 +668,24 @@ object Renderer {
 
             newY += fr.fontHeight
         }
-        immediate.draw()
+
+        if (consumers is VertexConsumerProvider.Immediate)
+            consumers.draw()
+    }
+
+    /**
+     * Draws a mesh recorded in local space at the current matrix, batching it if possible
+     */
+    internal fun drawMesh(mesh: RecordedMesh) {
+        val matrix = matrixStack.toMC().peek().positionMatrix
+
+        if (isBatching()) {
+            mesh.draw(batchConsumers, matrix)
+        } else {
+            val immediate = Client.getMinecraft().bufferBuilders.entityVertexConsumers
+            mesh.draw(immediate, matrix)
+            immediate.draw()
+        }
     }
 
     @JvmStatic
@@ -575,6 +706,21 @@ object Renderer {
 
     @JvmStatic
     fun drawImage(image: Image, x: Float, y: Float, width: Float, height: Float) {
+        if (isBatching()) {
+            val matrix = matrixStack.toMC().peek().positionMatrix
+            val color = (colorized ?: WHITE).toInt()
+            val light = 0xf000f0
+
+            // The text layer draws a full-bright textured quad, which is exactly what is needed here
+            batchConsumers.getBuffer(RenderLayer.getText(image.getIdOrRegister())).apply {
+                vertex(matrix, x, y + height, 0f).color(color).texture(0f, 1f).light(light)
+                vertex(matrix, x + width, y + height, 0f).color(color).texture(1f, 1f).light(light)
+                vertex(matrix, x + width, y, 0f).color(color).texture(1f, 0f).light(light)
+                vertex(matrix, x, y, 0f).color(color).texture(0f, 0f).light(light)
+            }
+            return
+        }
+
         if (colorized == null)
             colorize(1f, 1f, 1f, 1f)
 
@@ -638,6 +784,7 @@ object Renderer {
         val showParrot = obj.getOrDefault<Boolean>("showParrot", false)
         val showStingers = obj.getOrDefault<Boolean>("showBeeStinger", false)
 
+        flushBatch()
         matrixStack.push()
 
         val (entityYaw, entityPitch) = if (rotate) {
@@ -759,6 +906,75 @@ object Renderer {
         }
     }
 
+    /**
+     * Adds a solid quad to the current batch. The GUI layer culls back faces, so the vertices
+     * are reordered if necessary to face the screen.
+     */
+    private fun batchQuad(
+        color: Long,
+        x1: Float, y1: Float,
+        x2: Float, y2: Float,
+        x3: Float, y3: Float,
+        x4: Float, y4: Float,
+    ) {
+        val matrix = matrixStack.toMC().peek().positionMatrix
+        val argb = color.toInt()
+        val buffer = batchConsumers.getBuffer(RenderLayer.getGui())
+
+        val area = (x1 * y2 - x2 * y1) + (x2 * y3 - x3 * y2) + (x3 * y4 - x4 * y3) + (x4 * y1 - x1 * y4)
+        if (area <= 0f) {
+            buffer.vertex(matrix, x1, y1, 0f).color(argb)
+            buffer.vertex(matrix, x2, y2, 0f).color(argb)
+            buffer.vertex(matrix, x3, y3, 0f).color(argb)
+            buffer.vertex(matrix, x4, y4, 0f).color(argb)
+        } else {
+            buffer.vertex(matrix, x4, y4, 0f).color(argb)
+            buffer.vertex(matrix, x3, y3, 0f).color(argb)
+            buffer.vertex(matrix, x2, y2, 0f).color(argb)
+            buffer.vertex(matrix, x1, y1, 0f).color(argb)
+        }
+    }
+
+    /**
+     * Collects consecutive geometry that uses the same render layer into one buffer, like
+     * [VertexConsumerProvider.Immediate]. When the layer changes, the previous run is drawn
+     * first, so everything is layered in the order it was drawn.
+     */
+    private class BatchConsumers : VertexConsumerProvider {
+        // Only one run is open at a time, so every layer can share one allocator
+        private val allocator = BufferAllocator(INITIAL_BATCH_BUFFER_SIZE)
+        private var layer: RenderLayer? = null
+        private var builder: BufferBuilder? = null
+
+        override fun getBuffer(layer: RenderLayer): VertexConsumer {
+            builder?.let {
+                if (layer == this.layer)
+                    return it
+            }
+
+            draw()
+            this.layer = layer
+            return BufferBuilder(allocator, layer.drawMode, layer.vertexFormat).also { builder = it }
+        }
+
+        fun draw() {
+            val layer = layer ?: return
+            val builder = builder ?: return
+            this.layer = null
+            this.builder = null
+
+            // Batched vertices already include their color, so the shader color must not tint them
+            val shaderColor = RenderSystem.getShaderColor().copyOf()
+            RenderSystem.setShaderColor(1f, 1f, 1f, 1f)
+            builder.endNullable()?.let(layer::draw)
+            RenderSystem.setShaderColor(shaderColor[0], shaderColor[1], shaderColor[2], shaderColor[3])
+        }
+
+        companion object {
+            private const val INITIAL_BATCH_BUFFER_SIZE = 256 * 1024
+        }
+    }
+
     enum class DrawMode(private val ucValue: UGraphics.DrawMode) {
         LINES(UGraphics.DrawMode.LINES),
         LINE_STRIP(UGraphics.DrawMode.LINE_STRIP),
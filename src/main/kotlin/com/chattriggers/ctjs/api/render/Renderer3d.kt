@@ -4,6 +4,7 @@ import com.chattriggers.ctjs.api.client.Client
 import com.chattriggers.ctjs.api.client.Settings
 import com.chattriggers.ctjs.api.vec.Vec3f
 import com.chattriggers.ctjs.internal.utils.get
+import com.chattriggers.ctjs.internal.utils.toFloatArray
 import com.mojang.blaze3d.systems.RenderSystem
 import gg.essential.elementa.dsl.component1
 import gg.essential.elementa.dsl.component2
@@ -16,10 +17,12 @@ import net.minecraft.client.render.LightmapTextureManager
 import net.minecraft.client.render.Tessellator
 import net.minecraft.client.render.VertexConsumerProvider
 import net.minecraft.client.render.VertexFormat
+import net.minecraft.client.render.VertexFormatElement
 import org.joml.Vector3f
 import org.lwjgl.opengl.GL11
 import org.mozilla.javascript.NativeObject
 import java.awt.Color
+import kotlin.math.hypot
 
 object Renderer3d {
     private var firstVertex = true
@@ -28,6 +31,16 @@ object Renderer3d {
     private val tessellator = Tessellator.getInstance()
     private val worldRenderer = UGraphics.getFromTessellator()
 
+    // How many numbers each vertex element takes up in the data passed to drawVertices
+    private val ELEMENT_SIZES = mapOf(
+        VertexFormatElement.POSITION to 3,
+        VertexFormatElement.COLOR to 4,
+        VertexFormatElement.UV_0 to 2,
+        VertexFormatElement.UV_1 to 2,
+        VertexFormatElement.UV_2 to 2,
+        VertexFormatElement.NORMAL to 3,
+    )
+
     /**
      * Begin drawing with the world renderer
      *
@@ -42,6 +55,7 @@ object Renderer3d {
         drawMode: Renderer.DrawMode = Renderer.DrawMode.QUADS,
         vertexFormat: Renderer.VertexFormat = Renderer.VertexFormat.POSITION,
     ) = apply {
+        Renderer.flushBatch()
         Renderer.pushMatrix()
             .enableBlend()
             .disableCull()
@@ -183,6 +197,8 @@ object Renderer3d {
             return
         began = false
 
+        // Anything batched since begin() was called was drawn before this shape
+        Renderer.flushBatch()
         worldRenderer.endVertex()
 
         worldRenderer.drawDirect()
@@ -192,6 +208,89 @@ object Renderer3d {
             .popMatrix()
     }
 
+    /**
+     * Draws a whole batch of vertices at once. This is much faster than calling [pos],
+     * [color], etc. for every vertex, since the vertices are read without calling back into
+     * JS and the camera position is only looked up once.
+     *
+     * Each vertex is a run of numbers in [vertices], with the elements of [vertexFormat] in
+     * order: positions take 3 numbers, colors take 4 (between 0 and 1), texture, overlay and
+     * light coordinates take 2, and normals take 3. For example, with
+     * [Renderer.VertexFormat.POSITION_COLOR] every vertex is `x, y, z, r, g, b, a`.
+     *
+     * @param drawMode the GL draw mode
+     * @param vertexFormat the layout of each vertex in [vertices]
+     * @param vertices the vertex data, as a float[], a Float32Array, or an array of numbers
+     * @see Renderer.DrawMode
+     */
+    @JvmStatic
+    fun drawVertices(drawMode: Renderer.DrawMode, vertexFormat: Renderer.VertexFormat, vertices: Any) {
+        val camera = Client.getMinecraft().gameRenderer.camera.pos
+        drawVertices(drawMode, vertexFormat, vertices.toFloatArray(), -camera.x, -camera.y, -camera.z)
+    }
+
+    internal fun drawVertices(
+        drawMode: Renderer.DrawMode,
+        vertexFormat: Renderer.VertexFormat,
+        data: FloatArray,
+        offsetX: Double,
+        offsetY: Double,
+        offsetZ: Double,
+    ) {
+        val elements = vertexFormat.toMC().elements
+        val stride = elements.sumOf { ELEMENT_SIZES[it] ?: error("Unsupported vertex element $it") }
+        require(data.size % stride == 0) {
+            "Expected a multiple of $stride numbers for vertex format $vertexFormat, but got ${data.size}"
+        }
+        if (data.isEmpty())
+            return
+
+        begin(drawMode, vertexFormat)
+        val stack = Renderer.matrixStack
+
+        var i = 0
+        while (i < data.size) {
+            // Like pos, each vertex ends the previous one, and draw ends the last one
+            if (i > 0)
+                worldRenderer.endVertex()
+
+            for (element in elements) {
+                when (element) {
+                    VertexFormatElement.POSITION -> worldRenderer.pos(
+                        stack,
+                        data[i] + offsetX,
+                        data[i + 1] + offsetY,
+                        data[i + 2] + offsetZ,
+                    )
+                    VertexFormatElement.COLOR -> worldRenderer.color(data[i], data[i + 1], data[i + 2], data[i + 3])
+                    VertexFormatElement.UV_0 -> worldRenderer.tex(data[i].toDouble(), data[i + 1].toDouble())
+                    VertexFormatElement.UV_1 -> worldRenderer.overlay(data[i].toInt(), data[i + 1].toInt())
+                    VertexFormatElement.UV_2 -> worldRenderer.light(data[i].toInt(), data[i + 1].toInt())
+                    VertexFormatElement.NORMAL -> worldRenderer.norm(stack, data[i], data[i + 1], data[i + 2])
+                }
+                i += ELEMENT_SIZES[element]!!
+            }
+        }
+
+        draw()
+    }
+
+    /**
+     * Creates a [Mesh], which is uploaded to the GPU once and can then be drawn every frame.
+     * This is much faster than [begin] and [draw] for geometry that rarely changes.
+     *
+     * @param drawMode the GL draw mode
+     * @param vertexFormat The [VertexFormat] to use for drawing
+     * @return the new [Mesh]
+     * @see Mesh
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun createMesh(
+        drawMode: Renderer.DrawMode = Renderer.DrawMode.QUADS,
+        vertexFormat: Renderer.VertexFormat = Renderer.VertexFormat.POSITION,
+    ) = Mesh(drawMode, vertexFormat)
+
     /**
      * Renders floating lines of text in the 3D world at a specific position.
      * This should be placed inside a `preRenderWorld` trigger.
@@ -206,6 +305,8 @@ object Renderer3d {
      * @param increase whether to scale the text up as the player moves away
      * @param centered whether to center each line based on the longest line (this has no effect if there are no newline characters)
      * @param renderThroughBlocks whether to render the text through blocks
+     * @param cull whether to skip the text if it is entirely off-screen
+     * @see Culling
      */
     @JvmStatic
     @JvmOverloads
@@ -220,6 +321,7 @@ object Renderer3d {
         increase: Boolean = false,
         centered: Boolean = true,
         renderThroughBlocks: Boolean = true,
+        cull: Boolean = false,
     ) {
         val (lines, width, height) = Renderer.splitText(text)
 
@@ -237,6 +339,13 @@ object Renderer3d {
             0.025f
         }
 
+        if (cull) {
+            val radius = lScale * hypot(width, height) / 2
+            if (!Culling.isVisible(x.toDouble(), y.toDouble(), z.toDouble(), radius.toDouble()))
+                return
+        }
+
+        Renderer.flushBatch()
         Renderer.pushMatrix()
         Renderer.translate(renderPos.x, renderPos.y, renderPos.z)
         Renderer.multiply(camera.rotation)
@@ -323,6 +432,7 @@ object Renderer3d {
             obj.get<Boolean>("increase") ?: false,
             obj.get<Boolean>("centered") ?: true,
             obj.get<Boolean>("renderThroughBlocks") ?: true,
+            obj.get<Boolean>("cull") ?: false,
         )
     }
 
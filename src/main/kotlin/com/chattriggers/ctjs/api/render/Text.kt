@@ -1,8 +1,11 @@
 package com.chattriggers.ctjs.api.render
 
 import com.chattriggers.ctjs.api.message.ChatLib
+import com.chattriggers.ctjs.internal.render.RecordedMesh
 import com.chattriggers.ctjs.internal.utils.getOption
+import net.minecraft.client.font.TextRenderer
 import net.minecraft.text.Style
+import org.joml.Matrix4f
 import org.mozilla.javascript.NativeObject
 
 class Text {
@@ -24,6 +27,12 @@ class Text {
     private var maxLines = Int.MAX_VALUE
     private var scale = 1f
 
+    // The glyphs of every visible line, laid out once and drawn again until something changes
+    private var mesh: RecordedMesh? = null
+    private var lineWidths = IntArray(0)
+    // Obfuscated (§k) glyphs change every frame, so they can't be drawn from a cached mesh
+    private var obfuscated = false
+
     @JvmOverloads
     constructor(string: String, x: Float = 0f, y: Float = 0f) {
         setString(string)
@@ -55,7 +64,13 @@ class Text {
 
     fun getColor(): Long = color
 
-    fun setColor(color: Long) = apply { this.color = Renderer.fixAlpha(color) }
+    fun setColor(color: Long) = apply {
+        val fixed = Renderer.fixAlpha(color)
+        if (this.color != fixed) {
+            this.color = fixed
+            mesh = null
+        }
+    }
 
     fun getFormatted(): Boolean = formatted
 
@@ -66,7 +81,12 @@ class Text {
 
     fun getShadow(): Boolean = shadow
 
-    fun setShadow(shadow: Boolean) = apply { this.shadow = shadow }
+    fun setShadow(shadow: Boolean) = apply {
+        if (this.shadow != shadow) {
+            this.shadow = shadow
+            mesh = null
+        }
+    }
 
     fun getAlign(): Align = align
 
@@ -116,11 +136,21 @@ class Text {
 
     fun getMaxLines(): Int = maxLines
 
-    fun setMaxLines(maxLines: Int) = apply { this.maxLines = maxLines }
+    fun setMaxLines(maxLines: Int) = apply {
+        if (this.maxLines != maxLines) {
+            this.maxLines = maxLines
+            mesh = null
+        }
+    }
 
     fun getScale(): Float = scale
 
-    fun setScale(scale: Float) = apply { this.scale = scale }
+    fun setScale(scale: Float) = apply {
+        if (this.scale != scale) {
+            this.scale = scale
+            mesh = null
+        }
+    }
 
     /**
      * Sets the maximum width of the text, splitting it into multiple lines if necessary.
@@ -156,7 +186,9 @@ class Text {
             Renderer.enableBlend()
             Renderer.scale(scale, scale, scale)
 
-            var longestLine = lines.maxOf { Renderer.getStringWidth(it) * scale }
+            val mesh = getMesh()
+
+            var longestLine = (lineWidths.maxOrNull() ?: 0) * scale
             if (maxWidth != 0)
                 longestLine = longestLine.coerceAtMost(maxWidth.toFloat())
             width = longestLine
@@ -178,14 +210,49 @@ class Text {
                     getHeight()
                 )
 
-            for (i in 0 until maxLines) {
-                if (i >= lines.size) break
-                Renderer.drawString(lines[i], xHolder, yHolder, color, shadow)
-                yHolder += scale * 10
-            }
+            Renderer.translate(xHolder, yHolder)
+            Renderer.drawMesh(mesh)
+
             Renderer.disableBlend()
             Renderer.popMatrix()
         }
+
+    /**
+     * Lays out the visible lines if anything about them changed since they were last drawn
+     */
+    private fun getMesh(): RecordedMesh {
+        if (!obfuscated)
+            mesh?.takeIf { it.isValid }?.let { return it }
+
+        val fontRenderer = Renderer.getFontRenderer()
+        val recorder = RecordedMesh.Recorder()
+        val matrix = Matrix4f()
+        var lineY = 0f
+
+        lineWidths = IntArray(lines.size) { Renderer.getStringWidth(lines[it]) }
+
+        for (i in 0 until maxLines) {
+            if (i >= lines.size) break
+
+            // Matches what Renderer.drawString would draw for this line
+            fontRenderer.draw(
+                ChatLib.addColor(lines[i]),
+                0f,
+                lineY,
+                color.toInt(),
+                shadow,
+                matrix,
+                recorder,
+                TextRenderer.TextLayerType.NORMAL,
+                0,
+                0xf000f0,
+            )
+            lineY += scale * 10
+        }
+
+        return recorder.build().also { mesh = it }
+    }
+
     private fun updateFormatting() {
         string =
             if (formatted) ChatLib.addColor(string)
@@ -202,6 +269,9 @@ class Text {
                 lines.add(line)
             }
         }
+
+        obfuscated = lines.any { OBFUSCATED_REGEX.containsMatchIn(it) }
+        mesh = null
     }
 
     override fun toString() =
@@ -215,4 +285,8 @@ class Text {
     enum class Align {
         LEFT, CENTER, RIGHT
     }
+
+    private companion object {
+        private val OBFUSCATED_REGEX = "§[kK]".toRegex()
+    }
 }
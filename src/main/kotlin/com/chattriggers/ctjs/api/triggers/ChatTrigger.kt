@@ -1,7 +1,9 @@
 package com.chattriggers.ctjs.api.triggers
 
 import com.chattriggers.ctjs.api.message.TextComponent
+import com.chattriggers.ctjs.internal.engine.ChatCriteriaIndex
 import org.mozilla.javascript.regexp.NativeRegExp
+import java.util.*
 
 class ChatTrigger(method: Any, type: ITriggerType) : Trigger(method, type) {
     private lateinit var chatCriteria: Any
@@ -12,6 +14,12 @@ class ChatTrigger(method: Any, type: ITriggerType) : Trigger(method, type) {
     private val parameters = mutableListOf<Parameter?>()
     private var triggerIfCanceled: Boolean = true
 
+    // Literal segments of the criteria which must be present for it to match, used by
+    // ChatCriteriaIndex to skip the regex entirely. null if they can't be determined.
+    @Volatile
+    internal var requiredLiterals: List<String>? = null
+        private set
+
     /**
      * Sets if the chat trigger should run if the chat event has already been canceled.
      * True by default.
@@ -32,21 +40,25 @@ class ChatTrigger(method: Any, type: ITriggerType) : Trigger(method, type) {
         this.chatCriteria = chatCriteria
         val flags = mutableSetOf<RegexOption>()
         var source = ".+"
+        var literals: List<String>? = null
 
         when (chatCriteria) {
             is CharSequence -> {
                 if (!formattedForced)
                     formatted = Regex("[&\u00a7]") in chatCriteria
 
-                val replacedCriteria = Regex.escape(chatCriteria.toString().replace("\n", "->newLine<-"))
+                val newLineCriteria = chatCriteria.toString().replace("\n", "->newLine<-")
+                val replacedCriteria = Regex.escape(newLineCriteria)
                     .replace(Regex("\\\$\\{[^*]+?}"), "\\\\E(.+)\\\\Q")
                     .replace(Regex("\\$\\{\\*?}"), "\\\\E(?:.+)\\\\Q")
 
                 if (caseInsensitive)
                     flags.add(RegexOption.IGNORE_CASE)
 
-                if ("" != chatCriteria)
+                if ("" != chatCriteria) {
                     source = replacedCriteria
+                    literals = ChatCriteriaIndex.extractLiterals(newLineCriteria)
+                }
             }
             is NativeRegExp -> {
                 if (chatCriteria["ignoreCase"] as Boolean || caseInsensitive)
@@ -66,6 +78,8 @@ class ChatTrigger(method: Any, type: ITriggerType) : Trigger(method, type) {
         }
 
         criteriaPattern = Regex(source, flags)
+        requiredLiterals = literals
+        ChatCriteriaIndex.invalidate()
     }
 
     /**
@@ -170,6 +184,18 @@ class ChatTrigger(method: Any, type: ITriggerType) : Trigger(method, type) {
             setCriteria(chatCriteria)
     }
 
+    override fun register(): Trigger {
+        if (!isRegistered)
+            ChatCriteriaIndex.add(this)
+        return super.register()
+    }
+
+    override fun unregister(): Trigger {
+        if (isRegistered)
+            ChatCriteriaIndex.remove(this)
+        return super.unregister()
+    }
+
     /**
      * Argument 1 (String) The chat message received
      * Argument 2 (ClientChatReceivedEvent) the chat event fired
@@ -184,7 +210,9 @@ class ChatTrigger(method: Any, type: ITriggerType) : Trigger(method, type) {
 
         if (!triggerIfCanceled && chatEvent.isCancelled()) return
 
-        val chatMessage = getChatMessage(chatEvent.message)
+        if (!chatEvent.canMatch(this, formatted)) return
+
+        val chatMessage = chatEvent.getCriteriaText(formatted)
 
         val variables = getVariables(chatMessage) ?: return
         variables.add(chatEvent)
@@ -192,16 +220,10 @@ class ChatTrigger(method: Any, type: ITriggerType) : Trigger(method, type) {
         callMethod(variables.toTypedArray())
     }
 
-    // helper method to get the proper chat message based on the presence of color codes
-    private fun getChatMessage(chatMessage: TextComponent) =
-        if (formatted)
-            chatMessage.formattedText.replace("\u00a7", "&")
-        else chatMessage.unformattedText
-
     // helper method to get the variables to pass through
     private fun getVariables(chatMessage: String) =
         if (::criteriaPattern.isInitialized)
-            matchesChatCriteria(chatMessage.replace("\n", "->newLine<-"))
+            matchesChatCriteria(chatMessage)
         else ArrayList()
 
     /**
@@ -258,5 +280,34 @@ class ChatTrigger(method: Any, type: ITriggerType) : Trigger(method, type) {
         }
     }
 
-    class Event(@JvmField val message: TextComponent) : CancellableEvent()
+    /**
+     * The event passed to `chat` and `actionBar` triggers
+     */
+    class Event(@JvmField val message: TextComponent) : CancellableEvent() {
+        // The message is normalized at most once per event and shared by every trigger, so
+        // that no trigger has to rebuild it for itself. Each form is only built if some
+        // trigger actually uses it.
+        private val formattedText by lazy { message.toCriteriaText(formatted = true) }
+        private val unformattedText by lazy { message.toCriteriaText(formatted = false) }
+
+        private var index: ChatCriteriaIndex.Snapshot? = null
+        private var formattedHits: BitSet? = null
+        private var unformattedHits: BitSet? = null
+
+        internal fun getCriteriaText(formatted: Boolean) = if (formatted) formattedText else unformattedText
+
+        // Scans the message for the literals of every registered chat trigger at most
+        // once per mode, no matter how many triggers are dispatched this event
+        internal fun canMatch(trigger: ChatTrigger, formatted: Boolean): Boolean {
+            val index = index ?: ChatCriteriaIndex.snapshot().also { index = it }
+
+            val hits = if (formatted) {
+                formattedHits ?: index.scan(formattedText).also { formattedHits = it }
+            } else {
+                unformattedHits ?: index.scan(unformattedText).also { unformattedHits = it }
+            }
+
+            return index.canMatch(trigger, hits)
+        }
+    }
 }
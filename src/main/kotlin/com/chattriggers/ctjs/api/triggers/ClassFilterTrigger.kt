@@ -4,7 +4,11 @@ import com.chattriggers.ctjs.api.entity.BlockEntity
 import com.chattriggers.ctjs.api.entity.Entity
 import com.chattriggers.ctjs.MCBlockEntity
 import com.chattriggers.ctjs.MCEntity
+import com.chattriggers.ctjs.internal.engine.JSLoader
+import com.chattriggers.ctjs.internal.engine.PacketDispatcher
 import net.minecraft.network.packet.Packet
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
 
 sealed class ClassFilterTrigger<Wrapped, Unwrapped>(
     method: Any,
@@ -27,14 +31,26 @@ sealed class ClassFilterTrigger<Wrapped, Unwrapped>(
      * @param classes The classes for which this trigger should run for
      * @return This trigger object for chaining
      */
-    fun setFilteredClasses(classes: List<Class<Unwrapped>>) = apply { triggerClasses = classes }
+    fun setFilteredClasses(classes: List<Class<Unwrapped>>) = apply {
+        triggerClasses = classes
+        JSLoader.invalidateClassFilters(triggerType)
+    }
+
+    internal val isFiltered get() = triggerClasses.isNotEmpty()
+
+    internal fun matches(clazz: Class<*>) = triggerClasses.isEmpty() || triggerClasses.any { it.isAssignableFrom(clazz) }
 
     override fun trigger(args: Array<out Any?>) {
         val placeholder = evalTriggerType(args)
         if (triggerClasses.isEmpty() || triggerClasses.any { it.isInstance(placeholder) })
-            callMethod(args)
+            onMatched(args)
     }
 
+    // Called by JSLoader.execClassFiltered, which has already checked the filter
+    internal fun triggerMatched(args: Array<out Any?>) = onMatched(args)
+
+    protected open fun onMatched(args: Array<out Any?>) = callMethod(args)
+
     private fun evalTriggerType(args: Array<out Any?>): Unwrapped {
         val arg = args.getOrNull(0) ?: error("First argument of $triggerType trigger can not be null")
 
@@ -70,5 +86,59 @@ class PacketTrigger(method: Any, triggerType: ITriggerType) : ClassFilterTrigger
     triggerType,
     Packet::class.java,
 ) {
+    @Volatile
+    private var dispatchMode = DispatchMode.INLINE
+
+    internal val queuedPackets = AtomicInteger()
+    internal val droppedPackets = AtomicLong()
+
+    /**
+     * Sets where this trigger runs, using [DispatchMode]. Only [DispatchMode.INLINE]
+     * triggers can cancel their packet.
+     *
+     * @param mode where the trigger should run
+     * @return the trigger for method chaining
+     */
+    fun setDispatchMode(mode: DispatchMode) = apply { dispatchMode = mode }
+
+    /**
+     * @return how many packets are waiting for this trigger to handle them
+     */
+    fun getQueuedPackets(): Int = queuedPackets.get()
+
+    /**
+     * @return how many packets this trigger missed because its queue was full
+     */
+    fun getDroppedPackets(): Long = droppedPackets.get()
+
     override fun unwrap(wrapped: Packet<*>): Packet<*> = wrapped
+
+    override fun onMatched(args: Array<out Any?>) {
+        val mode = dispatchMode
+        if (mode == DispatchMode.INLINE) {
+            callMethod(args)
+        } else PacketDispatcher.dispatch(this, mode, args)
+    }
+
+    internal fun runQueued(args: Array<out Any?>) = callMethod(args)
+
+    enum class DispatchMode {
+        /**
+         * Runs on the network thread as soon as the packet arrives, before the game handles
+         * it. This is the default, and the only mode where the packet can be cancelled. Slow
+         * triggers will delay every packet after it.
+         */
+        INLINE,
+
+        /**
+         * Runs on a separate thread shared by all async packet triggers, in the order the
+         * packets arrived
+         */
+        ASYNC,
+
+        /**
+         * Runs on the client thread, at the same time as the game's own tasks
+         */
+        CLIENT_THREAD,
+    }
 }
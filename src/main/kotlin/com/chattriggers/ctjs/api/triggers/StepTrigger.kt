@@ -1,12 +1,14 @@
 package com.chattriggers.ctjs.api.triggers
 
-import com.chattriggers.ctjs.api.client.Client
+import com.chattriggers.ctjs.internal.engine.StepScheduler
 
 class StepTrigger(method: Any) : Trigger(method, TriggerType.STEP) {
     private var fps: Long = 60L
     private var delay: Long = -1
-    private var systemTime: Long = Client.getSystemTime()
+    private var nextStep: Long = System.nanoTime()
     private var elapsed: Long = 0L
+    private var maxCatchUp: Int = -1
+    private var coalesced = false
 
     /**
      * Sets the frames per second that the trigger activates.
@@ -16,7 +18,7 @@ class StepTrigger(method: Any) : Trigger(method, TriggerType.STEP) {
      */
     fun setFps(fps: Long) = apply {
         this.fps = if (fps < 1) 1L else fps
-        systemTime = Client.getSystemTime() + 1000 / this.fps
+        nextStep = System.nanoTime()
     }
 
     /**
@@ -27,27 +29,66 @@ class StepTrigger(method: Any) : Trigger(method, TriggerType.STEP) {
      */
     fun setDelay(delay: Long) = apply {
         this.delay = if (delay < 1) 1L else delay
-        systemTime = Client.getSystemTime() - this.delay * 1000
+        nextStep = System.nanoTime()
+    }
+
+    /**
+     * Sets the maximum number of missed steps this trigger will catch up on in a single
+     * frame, for example after the game freezes. Any steps beyond this are skipped.
+     * Defaults to the value set in the ChatTriggers config.
+     * @param maxCatchUp the maximum steps per frame, at least 1
+     * @return the trigger for method chaining
+     */
+    fun setMaxCatchUp(maxCatchUp: Int) = apply {
+        this.maxCatchUp = maxCatchUp.coerceAtLeast(1)
+    }
+
+    /**
+     * Sets whether this trigger should be called at most once per frame. If true, the
+     * trigger is passed the number of steps that were due as a second argument instead
+     * of being called once for every step. False by default.
+     * @param coalesced whether missed steps should be combined into one call
+     * @return the trigger for method chaining
+     */
+    @JvmOverloads
+    fun setCoalesced(coalesced: Boolean = true) = apply {
+        this.coalesced = coalesced
     }
 
     override fun register(): Trigger {
-        systemTime = Client.getSystemTime()
+        nextStep = System.nanoTime()
         return super.register()
     }
 
     override fun trigger(args: Array<out Any?>) {
-        if (delay < 0) {
-            // run trigger based on set fps value (60 per second by default)
-            while (systemTime < Client.getSystemTime() + 1000 / fps) {
-                callMethod(arrayOf(++elapsed))
-                systemTime += 1000 / fps
-            }
-        } else {
-            // run trigger based on set delay in seconds
-            while (Client.getSystemTime() > systemTime + delay * 1000) {
-                callMethod(arrayOf(++elapsed))
-                systemTime += delay * 1000
-            }
+        val now = StepScheduler.frameTime
+        if (now < nextStep)
+            return
+
+        val interval = if (delay < 0) 1_000_000_000L / fps else delay * 1_000_000_000L
+        var due = (now - nextStep) / interval + 1
+
+        if (coalesced) {
+            if (!StepScheduler.hasBudget())
+                return
+
+            nextStep += due * interval
+            elapsed += due
+            callMethod(arrayOf(elapsed, due))
+            return
+        }
+
+        // Skip anything past the catch-up limit so a long stall can't snowball into
+        // dozens of back-to-back calls in one frame
+        val limit = if (maxCatchUp > 0) maxCatchUp else StepScheduler.maxCatchUp
+        if (due > limit) {
+            nextStep += (due - limit) * interval
+            due = limit.toLong()
+        }
+
+        while (due-- > 0 && StepScheduler.hasBudget()) {
+            nextStep += interval
+            callMethod(arrayOf(++elapsed))
         }
     }
 }
@@ -2,6 +2,8 @@ package com.chattriggers.ctjs.api.triggers
 
 import com.chattriggers.ctjs.CTJS
 import com.chattriggers.ctjs.internal.engine.JSLoader
+import com.chattriggers.ctjs.internal.engine.module.ModuleManager
+import java.util.concurrent.atomic.AtomicLong
 
 abstract class Trigger protected constructor(
     var method: Any,
@@ -9,6 +11,12 @@ abstract class Trigger protected constructor(
 ) : Comparable<Trigger> {
     private var priority: Priority = Priority.NORMAL
 
+    // Breaks ties between triggers of the same priority, so they run in registration order
+    private val sequence = nextSequence.getAndIncrement()
+
+    // The module that created this trigger, so it can be removed when only that module is reloaded
+    internal val module = ModuleManager.getCallingModule()
+
     var isRegistered = false
         private set
 
@@ -27,7 +35,7 @@ abstract class Trigger protected constructor(
     fun setPriority(priority: Priority) = apply {
         this.priority = priority
 
-        // Re-register so the position in the ConcurrentSkipListSet gets updated
+        // Re-register so the trigger gets re-sorted in JSLoader
         unregister()
         register()
     }
@@ -66,12 +74,16 @@ abstract class Trigger protected constructor(
     internal abstract fun trigger(args: Array<out Any?>)
 
     override fun compareTo(other: Trigger): Int {
-        val ordCmp = priority.ordinal - other.priority.ordinal
+        val ordCmp = priority.compareTo(other.priority)
         return if (ordCmp == 0)
-            hashCode() - other.hashCode()
+            sequence.compareTo(other.sequence)
         else ordCmp
     }
 
+    private companion object {
+        private val nextSequence = AtomicLong()
+    }
+
     enum class Priority {
         //LOWEST IS RAN LAST
         HIGHEST,
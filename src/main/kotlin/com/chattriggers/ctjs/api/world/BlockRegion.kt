@@ -0,0 +1,98 @@
+package com.chattriggers.ctjs.api.world
+
+import com.chattriggers.ctjs.MCBlock
+import com.chattriggers.ctjs.api.world.block.BlockType
+import net.minecraft.block.BlockState
+
+/**
+ * The blocks in a box of the world, read all at once with [World.getBlockRegion] or
+ * [World.getBlockRegionAsync]. This is much faster than calling [World.getBlockAt] for every
+ * position, since no wrapper objects are created for the blocks that are read.
+ *
+ * Each block is stored as its block state id in [getIds]. An id can be turned into a
+ * [BlockType] with [getBlockType], and the id of a block type's default state can be found
+ * with [getId]. Unloaded chunks and positions outside the world's height limits read as
+ * `minecraft:void_air`.
+ */
+class BlockRegion internal constructor(
+    private val minX: Int,
+    private val minY: Int,
+    private val minZ: Int,
+    private val sizeX: Int,
+    private val sizeY: Int,
+    private val sizeZ: Int,
+    private val ids: IntArray,
+) {
+    private val blockTypes = mutableMapOf<Int, BlockType>()
+
+    fun getMinX() = minX
+    fun getMinY() = minY
+    fun getMinZ() = minZ
+
+    fun getMaxX() = minX + sizeX - 1
+    fun getMaxY() = minY + sizeY - 1
+    fun getMaxZ() = minZ + sizeZ - 1
+
+    fun getSizeX() = sizeX
+    fun getSizeY() = sizeY
+    fun getSizeZ() = sizeZ
+
+    /**
+     * Gets the block state id of every block in the region, ordered by y, then z, then x.
+     * The id of the block at (x, y, z) is at index `((y - minY) * sizeZ + (z - minZ)) * sizeX + (x - minX)`.
+     *
+     * This is the region's own array, so it should not be modified.
+     *
+     * @return the block state ids
+     */
+    fun getIds(): IntArray = ids
+
+    /**
+     * @return whether the position is inside this region
+     */
+    fun contains(x: Int, y: Int, z: Int): Boolean {
+        return x - minX in 0 until sizeX && y - minY in 0 until sizeY && z - minZ in 0 until sizeZ
+    }
+
+    /**
+     * Gets the block state id of the block at a position in the world
+     *
+     * @return the block state id
+     */
+    fun getIdAt(x: Int, y: Int, z: Int): Int {
+        require(contains(x, y, z)) { "Position ($x, $y, $z) is outside of the region" }
+        return ids[((y - minY) * sizeZ + (z - minZ)) * sizeX + (x - minX)]
+    }
+
+    /**
+     * Gets the [BlockType] of the block at a position in the world
+     *
+     * @return the [BlockType]
+     */
+    fun getBlockTypeAt(x: Int, y: Int, z: Int): BlockType = getBlockType(getIdAt(x, y, z))
+
+    /**
+     * Gets the [BlockType] for a block state id from [getIds]
+     *
+     * @return the [BlockType]
+     */
+    fun getBlockType(id: Int): BlockType = blockTypes.getOrPut(id) { BlockType(getBlockState(id).block) }
+
+    /**
+     * Gets the [BlockState] for a block state id from [getIds]
+     *
+     * @return the [BlockState]
+     */
+    fun getBlockState(id: Int): BlockState = MCBlock.getStateFromRawId(id)
+
+    /**
+     * Gets the block state id of a block type's default state. Blocks with more than one
+     * state, like stairs or logs, have a different id for each state, so compare with
+     * `region.getBlockType(id)` when any state should match.
+     *
+     * @return the block state id
+     */
+    fun getId(blockType: BlockType): Int = MCBlock.getRawIdFromState(blockType.mcValue.defaultState)
+
+    override fun toString() = "BlockRegion(min=[$minX, $minY, $minZ], max=[${getMaxX()}, ${getMaxY()}, ${getMaxZ()}])"
+}
@@ -36,6 +36,23 @@ class Chunk(override val mcValue: MCChunk) : CTWrapper<MCChunk> {
      */
     fun getMinBlockZ() = getZ() * 16
 
+    /**
+     * Reads every block in this chunk at once
+     *
+     * @return the [BlockRegion] containing the blocks
+     * @see World.getBlockRegion
+     */
+    fun getBlockRegion(): BlockRegion {
+        return World.getBlockRegion(
+            getMinBlockX(),
+            mcValue.bottomY,
+            getMinBlockZ(),
+            getMinBlockX() + 15,
+            mcValue.topY - 1,
+            getMinBlockZ() + 15,
+        )
+    }
+
     /**
      * Gets every entity in this chunk
      *
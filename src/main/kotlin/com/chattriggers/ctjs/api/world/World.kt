@@ -1,6 +1,8 @@
 package com.chattriggers.ctjs.api.world
 
+import com.chattriggers.ctjs.MCBlockEntity
 import com.chattriggers.ctjs.MCBlockPos
+import com.chattriggers.ctjs.MCEntity
 import com.chattriggers.ctjs.MCParticle
 import com.chattriggers.ctjs.api.client.Client
 import com.chattriggers.ctjs.api.client.Settings
@@ -12,11 +14,12 @@ import com.chattriggers.ctjs.api.render.Renderer
 import com.chattriggers.ctjs.api.world.block.Block
 import com.chattriggers.ctjs.api.world.block.BlockPos
 import com.chattriggers.ctjs.api.world.block.BlockType
-import com.chattriggers.ctjs.internal.mixins.ClientChunkManagerAccessor
-import com.chattriggers.ctjs.internal.mixins.ClientChunkMapAccessor
-import com.chattriggers.ctjs.internal.mixins.ClientWorldAccessor
-import com.chattriggers.ctjs.internal.utils.asMixin
+import com.chattriggers.ctjs.internal.engine.JSLoader
+import com.chattriggers.ctjs.internal.engine.ModuleThreads
+import com.chattriggers.ctjs.internal.utils.mapLazily
 import com.chattriggers.ctjs.internal.utils.toIdentifier
+import com.chattriggers.ctjs.internal.world.BlockEntityIndex
+import com.chattriggers.ctjs.internal.world.BlockRegionReader
 import gg.essential.universal.UMinecraft
 import net.minecraft.block.BlockState
 import net.minecraft.client.world.ClientWorld
@@ -33,8 +36,13 @@ import net.minecraft.particle.SculkChargeParticleEffect
 import net.minecraft.particle.ShriekParticleEffect
 import net.minecraft.particle.VibrationParticleEffect
 import net.minecraft.registry.Registries
+import net.minecraft.util.Formatting
+import net.minecraft.util.math.Box
 import net.minecraft.world.LightType
 import net.minecraft.world.event.BlockPositionSource
+import org.mozilla.javascript.Callable
+import org.mozilla.javascript.Context
+import java.util.function.Predicate
 import kotlin.math.roundToInt
 
 object World {
@@ -110,6 +118,33 @@ object World {
         return toMC()!!.getBlockState(pos.toMC())
     }
 
+    /**
+     * Reads every block in the box between two corners at once. Both corners are included.
+     * This is much faster than calling [getBlockAt] for each position, see [BlockRegion].
+     *
+     * @return the [BlockRegion] containing the blocks
+     */
+    @JvmStatic
+    fun getBlockRegion(x1: Int, y1: Int, z1: Int, x2: Int, y2: Int, z2: Int): BlockRegion {
+        return BlockRegionReader.read(toMC()!!, BlockRegionReader.Bounds(x1, y1, z1, x2, y2, z2))
+    }
+
+    /**
+     * Like [getBlockRegion], but the blocks are read on a separate thread, and [callback]
+     * is called there with the [BlockRegion] once it is done. The chunks the box touches are
+     * copied before this returns, so the region shows the world as it was when this was called.
+     *
+     * @param callback a function that takes the [BlockRegion]
+     */
+    @JvmStatic
+    fun getBlockRegionAsync(x1: Int, y1: Int, z1: Int, x2: Int, y2: Int, z2: Int, callback: Callable) {
+        val read = BlockRegionReader.snapshot(toMC()!!, BlockRegionReader.Bounds(x1, y1, z1, x2, y2, z2))
+
+        ModuleThreads.start(ModuleThreads.getCallingModule()) {
+            JSLoader.invoke(callback, arrayOf(read()))
+        }
+    }
+
     /**
      * Gets the skylight level at the given position. This is the value seen in the debug (F3) menu
      *
@@ -188,33 +223,193 @@ object World {
      */
     @JvmStatic
     fun getAllEntitiesOfType(clazz: Class<*>): List<Entity> {
-        return getAllEntities().filter {
-            clazz.isInstance(it.toMC())
-        }
+        return toMC()?.entities?.filter(clazz::isInstance)?.map(Entity::fromMC) ?: listOf()
     }
 
+    /**
+     * Gets every entity whose bounding box intersects a box in the world. This only looks at
+     * the chunk sections the box covers, so it is much faster than filtering [getAllEntities].
+     *
+     * @param clazz the class to filter for (Use `Java.type().class` to get this)
+     * @return the entity list
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun getEntitiesInBox(
+        minX: Double,
+        minY: Double,
+        minZ: Double,
+        maxX: Double,
+        maxY: Double,
+        maxZ: Double,
+        clazz: Class<*> = MCEntity::class.java,
+    ): List<Entity> {
+        return queryEntities(Box(minX, minY, minZ, maxX, maxY, maxZ), clazz) { true }.map(Entity::fromMC)
+    }
+
+    /**
+     * Gets every entity whose position is at most [radius] blocks away from a point
+     *
+     * @param clazz the class to filter for (Use `Java.type().class` to get this)
+     * @return the entity list
+     */
     @JvmStatic
-    fun getAllBlockEntities(): List<BlockEntity> {
-        val chunks = toMC()
-            ?.asMixin<ClientWorldAccessor>()
-            ?.chunkManager?.asMixin<ClientChunkManagerAccessor>()
-            ?.chunks?.asMixin<ClientChunkMapAccessor>()
-            ?.chunks ?: return emptyList()
+    @JvmOverloads
+    fun getEntitiesInRadius(
+        x: Double,
+        y: Double,
+        z: Double,
+        radius: Double,
+        clazz: Class<*> = MCEntity::class.java,
+    ): List<Entity> {
+        return queryRadius(x, y, z, radius, clazz) { true }.map(Entity::fromMC)
+    }
 
-        val blockEntities = mutableListOf<BlockEntity>()
+    /**
+     * Gets the [count] closest entities to a point that are at most [radius] blocks away from
+     * it, sorted from closest to furthest
+     *
+     * @param clazz the class to filter for (Use `Java.type().class` to get this)
+     * @return the entity list
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun getNearestEntities(
+        x: Double,
+        y: Double,
+        z: Double,
+        count: Int,
+        radius: Double,
+        clazz: Class<*> = MCEntity::class.java,
+    ): List<Entity> {
+        return queryRadius(x, y, z, radius, clazz) { true }
+            .sortedBy { it.squaredDistanceTo(x, y, z) }
+            .take(count)
+            .map(Entity::fromMC)
+    }
 
-        for (i in 0 until chunks.length()) {
-            blockEntities += Chunk(chunks.getPlain(i) ?: continue).getAllBlockEntities()
+    /**
+     * Gets every entity at most [radius] blocks away from a point whose name, without
+     * formatting, matches [name]
+     *
+     * @param name either the exact name to look for, or a function that takes a name and
+     *             returns whether it matches
+     * @return the entity list
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun getEntitiesByName(
+        name: Any,
+        x: Double,
+        y: Double,
+        z: Double,
+        radius: Double,
+        clazz: Class<*> = MCEntity::class.java,
+    ): List<Entity> {
+        val matches: (String) -> Boolean = when (name) {
+            is CharSequence -> name.toString()::equals
+            is Callable -> { Context.toBoolean(JSLoader.invoke(name, arrayOf(it))) }
+            is Predicate<*> -> {
+                @Suppress("UNCHECKED_CAST")
+                (name as Predicate<String>)::test
+            }
+            else -> throw IllegalArgumentException("Expected a name or a predicate, but got ${name::class.simpleName}")
         }
 
-        return blockEntities
+        return queryRadius(x, y, z, radius, clazz) {
+            matches(Formatting.strip(it.name.string) ?: "")
+        }.map(Entity::fromMC)
+    }
+
+    // Entities are only wrapped once they pass every filter
+    private fun queryEntities(box: Box, clazz: Class<*>, predicate: (MCEntity) -> Boolean): List<MCEntity> {
+        val world = toMC() ?: return listOf()
+
+        // The world can only look up entity subclasses, so other classes (e.g. interfaces like
+        // Monster) are checked for each entity instead
+        if (!MCEntity::class.java.isAssignableFrom(clazz))
+            return world.getEntitiesByClass(MCEntity::class.java, box) { clazz.isInstance(it) && predicate(it) }
+
+        @Suppress("UNCHECKED_CAST")
+        return world.getEntitiesByClass(clazz as Class<MCEntity>, box, predicate)
     }
 
+    private fun queryRadius(
+        x: Double,
+        y: Double,
+        z: Double,
+        radius: Double,
+        clazz: Class<*>,
+        predicate: (MCEntity) -> Boolean,
+    ): List<MCEntity> {
+        val box = Box(x - radius, y - radius, z - radius, x + radius, y + radius, z + radius)
+        val radiusSquared = radius * radius
+        return queryEntities(box, clazz) {
+            it.squaredDistanceTo(x, y, z) <= radiusSquared && predicate(it)
+        }
+    }
+
+    /**
+     * Gets every block entity in the loaded chunks
+     *
+     * @return the block entity list
+     */
+    @JvmStatic
+    fun getAllBlockEntities(): List<BlockEntity> = getAllBlockEntitiesOfType(MCBlockEntity::class.java)
+
+    /**
+     * Gets every block entity in the loaded chunks of a certain class
+     *
+     * @param clazz the class to filter for (Use `Java.type().class` to get this)
+     * @return the block entity list
+     */
     @JvmStatic
     fun getAllBlockEntitiesOfType(clazz: Class<*>): List<BlockEntity> {
-        return getAllBlockEntities().filter {
-            clazz.isInstance(it.toMC())
-        }
+        return BlockEntityIndex.getAll(clazz).mapLazily(::BlockEntity)
+    }
+
+    /**
+     * Gets every block entity whose block intersects a box in the world. Only the chunks the
+     * box covers are checked.
+     *
+     * @param clazz the class to filter for (Use `Java.type().class` to get this)
+     * @return the block entity list
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun getBlockEntitiesInBox(
+        minX: Double,
+        minY: Double,
+        minZ: Double,
+        maxX: Double,
+        maxY: Double,
+        maxZ: Double,
+        clazz: Class<*> = MCBlockEntity::class.java,
+    ): List<BlockEntity> {
+        return BlockEntityIndex.getInBox(Box(minX, minY, minZ, maxX, maxY, maxZ), clazz).mapLazily(::BlockEntity)
+    }
+
+    /**
+     * Gets every block entity whose block center is at most [radius] blocks away from a point
+     *
+     * @param clazz the class to filter for (Use `Java.type().class` to get this)
+     * @return the block entity list
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun getBlockEntitiesInRadius(
+        x: Double,
+        y: Double,
+        z: Double,
+        radius: Double,
+        clazz: Class<*> = MCBlockEntity::class.java,
+    ): List<BlockEntity> {
+        val box = Box(x - radius, y - radius, z - radius, x + radius, y + radius, z + radius)
+        val radiusSquared = radius * radius
+
+        return BlockEntityIndex.getInBox(box, clazz) {
+            it.pos.getSquaredDistanceFromCenter(x, y, z) <= radiusSquared
+        }.mapLazily(::BlockEntity)
     }
 
     /**
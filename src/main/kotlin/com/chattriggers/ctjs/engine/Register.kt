@@ -1,6 +1,7 @@
 package com.chattriggers.ctjs.engine
 
 import com.chattriggers.ctjs.api.triggers.*
+import com.chattriggers.ctjs.internal.engine.module.ModuleManager
 
 @Suppress("unused", "MemberVisibilityCanBePrivate")
 object Register {
@@ -9,10 +10,13 @@ object Register {
     }.associateBy {
         it.name.lowercase().drop("register".length)
     }
-    private val customTriggers = mutableSetOf<CustomTriggerType>()
+    // Maps each custom trigger type to the module that created it
+    private val customTriggers = mutableMapOf<CustomTriggerType, String?>()
 
     internal fun clearCustomTriggers() = customTriggers.clear()
 
+    internal fun clearCustomTriggers(module: String) = customTriggers.values.removeIf { it == module }
+
     /**
      * Helper method register a trigger.
      *
@@ -41,7 +45,7 @@ object Register {
     fun createCustomTrigger(name: String): Any {
         val customType = CustomTriggerType(name.lowercase())
         require(customType !in customTriggers) { "Cannot register duplicate custom trigger \"$name\"" }
-        customTriggers.add(customType)
+        customTriggers[customType] = ModuleManager.getCallingModule()
 
         return object {
             fun trigger(vararg args: Any?) = customType.triggerAll(*args)
@@ -229,6 +233,9 @@ object Register {
      *      per second
      * - [StepTrigger.setDelay] Sets the delay in seconds, i.e. how many seconds it takes
      *      to fire. Overrides [StepTrigger.setFps].
+     * - [StepTrigger.setMaxCatchUp] Sets how many missed steps may run in a single frame
+     * - [StepTrigger.setCoalesced] Calls the trigger at most once per frame, passing the
+     *      number of steps that were due as a second argument
      * - [Trigger.setPriority] Sets the priority
      *
      * @param method The method to call when the event is fired
@@ -620,6 +627,7 @@ object Register {
      * - [Trigger.setPriority] Sets the priority
      * - [ClassFilterTrigger.setFilteredClasses] Sets the packet classes which this trigger
      *   gets fired for
+     * - [PacketTrigger.setDispatchMode] Sets which thread this trigger runs on
      *
      * @param method The method to call when the event is fired
      * @return The trigger for additional modification
@@ -640,6 +648,7 @@ object Register {
      * - [Trigger.setPriority] Sets the priority
      * - [ClassFilterTrigger.setFilteredClasses] Sets the packet classes which this trigger
      *   gets fired for
+     * - [PacketTrigger.setDispatchMode] Sets which thread this trigger runs on
      *
      * @param method The method to call when the event is fired
      * @return The trigger for additional modification
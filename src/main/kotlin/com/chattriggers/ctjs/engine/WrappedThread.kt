@@ -1,36 +1,35 @@
 package com.chattriggers.ctjs.engine
 
-import com.chattriggers.ctjs.engine.printTraceToConsole
-import com.chattriggers.ctjs.internal.engine.JSContextFactory
-import com.chattriggers.ctjs.internal.engine.JSLoader
-import org.mozilla.javascript.Context
-import java.util.concurrent.ForkJoinPool
+import com.chattriggers.ctjs.internal.engine.ModuleThreads
 
 @Suppress("unused")
 class WrappedThread(private val task: Runnable) {
+    private val module = ModuleThreads.getCallingModule()
+
+    @Volatile
+    private var thread: Thread? = null
+
     fun start() {
-        ForkJoinPool.commonPool().execute {
-            try {
-                JSContextFactory.enterContext()
-                task.run()
-                Context.exit()
-            } catch (e: Throwable) {
-                e.printTraceToConsole()
-            }
-        }
+        thread = ModuleThreads.start(module, task)
+    }
+
+    fun interrupt() {
+        thread?.interrupt()
     }
 
+    fun isInterrupted() = thread?.isInterrupted ?: false
+
+    fun isAlive() = thread?.isAlive ?: false
+
+    fun getId() = thread?.threadId() ?: 0L
+
     // Provide the following methods as no-ops to avoid breaking
     // changes, as this class use to extend Thread
     fun run() {}
     fun stop() {}
-    fun interrupt() {}
-    fun isInterrupted() = false
     fun destroy() {}
-    fun isAlive() = true
     fun suspend() {}
     fun resume() {}
-    fun getId() = 0L
 
     companion object {
         @JvmStatic
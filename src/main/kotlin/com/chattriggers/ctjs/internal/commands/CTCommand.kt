@@ -9,6 +9,7 @@ import com.chattriggers.ctjs.api.message.TextComponent
 import com.chattriggers.ctjs.engine.Console
 import com.chattriggers.ctjs.engine.printTraceToConsole
 import com.chattriggers.ctjs.internal.commands.StaticCommand.Companion.onExecute
+import com.chattriggers.ctjs.internal.engine.TriggerProfiler
 import com.chattriggers.ctjs.internal.engine.module.ModuleManager
 import com.chattriggers.ctjs.internal.engine.module.ModulesGui
 import com.chattriggers.ctjs.internal.listeners.ClientListener
@@ -95,6 +96,12 @@ internal object CTCommand : Initializer {
                     )
                     .onExecute { dump(DumpType.CHAT) }
             )
+            .then(
+                literal("profile")
+                    .then(literal("start").onExecute { startProfiler() })
+                    .then(literal("stop").onExecute { stopProfiler() })
+                    .then(literal("dump").onExecute { dumpProfiler() })
+            )
             .then(
                 literal("migrate")
                     .then(
@@ -158,6 +165,7 @@ internal object CTCommand : Initializer {
         &c/ct dump &7- &oDumps previous chat messages into chat.
         &c/ct settings &7- &oOpens the ChatTriggers settings.
         &c/ct migrate <input> [output]&7 - &oMigrate a module from version 2.X to 3.X 
+        &c/ct profile <start|stop|dump> &7- &oProfiles the time spent in each trigger.
         &c/ct &7- &oDisplays this help dialog.
         &b&m${ChatLib.getChatBreak()}
     """.trimIndent()
@@ -198,6 +206,54 @@ internal object CTCommand : Initializer {
         idFixedOffset = idFixed + lines + 1
     }
 
+    private fun startProfiler() {
+        TriggerProfiler.start()
+        ChatLib.chat("&aStarted profiling triggers. Use &c/ct profile dump &ato view the results")
+    }
+
+    private fun stopProfiler() {
+        if (!TriggerProfiler.isRunning) {
+            ChatLib.chat("&cThe profiler is not running")
+            return
+        }
+
+        TriggerProfiler.stop()
+        dumpProfiler()
+    }
+
+    private fun dumpProfiler() {
+        val entries = TriggerProfiler.getEntries()
+        if (entries.isEmpty()) {
+            ChatLib.chat("&cNo triggers have been profiled")
+            return
+        }
+
+        ChatLib.chat("&6&m${ChatLib.getChatBreak()}")
+        ChatLib.chat("&6Calls &7| &6Total ms &7| &6Max ms &7| &6Alloc KB &7| &6Trigger")
+        entries.take(15).forEach {
+            ChatLib.chat(
+                "&e%d &7| &e%.2f &7| &e%.2f &7| &e%d &7| &b%s &f%s".format(
+                    it.calls,
+                    it.totalNanos / 1_000_000.0,
+                    it.maxNanos / 1_000_000.0,
+                    it.allocatedBytes / 1024,
+                    it.type.lowercase(),
+                    it.location,
+                )
+            )
+        }
+
+        try {
+            val file = TriggerProfiler.writeReport()
+            ChatLib.chat("&aWrote the full report to &e${file.path}")
+        } catch (e: IOException) {
+            e.printTraceToConsole()
+            ChatLib.chat("&cFailed to write the profiler report")
+        }
+
+        ChatLib.chat("&6&m${ChatLib.getChatBreak()}")
+    }
+
     private fun clearOldDump() {
         if (idFixedOffset == -1) return
         while (idFixedOffset >= idFixed)
@@ -3,6 +3,7 @@ package com.chattriggers.ctjs.internal.commands
 import com.chattriggers.ctjs.engine.LogType
 import com.chattriggers.ctjs.engine.printToConsole
 import com.chattriggers.ctjs.internal.engine.CTEvents
+import com.chattriggers.ctjs.internal.engine.module.ModuleManager
 import com.chattriggers.ctjs.internal.utils.Initializer
 import com.mojang.brigadier.CommandDispatcher
 import com.mojang.brigadier.builder.ArgumentBuilder
@@ -12,7 +13,8 @@ import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents
 import net.minecraft.command.CommandSource
 
 abstract class CommandCollection : Initializer {
-    private val allCommands = mutableSetOf<Command>()
+    // Maps each command to the module that registered it
+    private val allCommands = mutableMapOf<Command, String?>()
 
     private var clientDispatcher: CommandDispatcher<CommandSource>? = null
     private var networkDispatcher: CommandDispatcher<CommandSource>? = null
@@ -21,12 +23,12 @@ abstract class CommandCollection : Initializer {
     override fun init() {
         ClientCommandRegistrationCallback.EVENT.register { dispatcher, _ ->
             clientDispatcher = dispatcher as CommandDispatcher<CommandSource>
-            allCommands.forEach { it.registerImpl(dispatcher) }
+            allCommands.keys.forEach { it.registerImpl(dispatcher) }
         }
 
         CTEvents.NETWORK_COMMAND_DISPATCHER_REGISTER.register { dispatcher ->
             networkDispatcher = dispatcher as CommandDispatcher<CommandSource>
-            allCommands.forEach { it.registerImpl(dispatcher) }
+            allCommands.keys.forEach { it.registerImpl(dispatcher) }
         }
 
         ClientPlayConnectionEvents.DISCONNECT.register { _, _ ->
@@ -36,7 +38,7 @@ abstract class CommandCollection : Initializer {
     }
 
     fun register(command: Command) {
-        allCommands.add(command)
+        allCommands[command] = ModuleManager.getCallingModule()
         if (clientDispatcher.hasConflict(command) || networkDispatcher.hasConflict(command)) {
             existingCommandWarning(command.name).printToConsole(LogType.WARN)
         } else {
@@ -51,10 +53,16 @@ abstract class CommandCollection : Initializer {
     }
 
     fun unregisterAll() {
-        allCommands.forEach(::unregister)
+        allCommands.keys.forEach(::unregister)
         allCommands.clear()
     }
 
+    internal fun unregisterAll(module: String) {
+        val commands = allCommands.filterValues { it == module }.keys
+        commands.forEach(::unregister)
+        allCommands.keys.removeAll(commands)
+    }
+
     fun <S, T : ArgumentBuilder<S, T>> ArgumentBuilder<S, T>.onExecute(block: (CommandContext<S>) -> Unit): T =
         executes {
             block(it)
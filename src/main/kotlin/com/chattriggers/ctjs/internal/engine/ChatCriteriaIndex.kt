@@ -0,0 +1,194 @@
+package com.chattriggers.ctjs.internal.engine
+
+import com.chattriggers.ctjs.api.triggers.ChatTrigger
+import java.util.*
+
+/**
+ * A prefilter for [ChatTrigger]s. Every registered trigger contributes the literal
+ * segments of its criteria (the text between `${var}` placeholders), and all of those
+ * literals are compiled into a single Aho-Corasick automaton. A chat message is then
+ * scanned once per formatted/unformatted mode, and a trigger only needs to run its
+ * full regex if every one of its literals was found in the message.
+ *
+ * The prefilter is conservative: triggers without literals (regex criteria, empty
+ * criteria, etc.) are always candidates, so it can never reject a message that the
+ * trigger's regex would have matched.
+ */
+internal object ChatCriteriaIndex {
+    private val triggers = Collections.newSetFromMap(IdentityHashMap<ChatTrigger, Boolean>())
+
+    @Volatile
+    private var snapshot: Snapshot? = Snapshot.EMPTY
+
+    fun add(trigger: ChatTrigger) = synchronized(this) {
+        triggers.add(trigger)
+        snapshot = null
+    }
+
+    fun remove(trigger: ChatTrigger) = synchronized(this) {
+        triggers.remove(trigger)
+        snapshot = null
+    }
+
+    fun invalidate() = synchronized(this) {
+        snapshot = null
+    }
+
+    fun clear() = synchronized(this) {
+        triggers.clear()
+        snapshot = Snapshot.EMPTY
+    }
+
+    fun snapshot(): Snapshot = snapshot ?: synchronized(this) {
+        snapshot ?: build().also { snapshot = it }
+    }
+
+    private fun build(): Snapshot {
+        val literalIds = mutableMapOf<String, Int>()
+        val requirements = IdentityHashMap<ChatTrigger, IntArray>()
+
+        triggers.forEach { trigger ->
+            val literals = trigger.requiredLiterals
+            if (literals.isNullOrEmpty())
+                return@forEach
+
+            requirements[trigger] = literals.map { literalIds.getOrPut(it) { literalIds.size } }.toIntArray()
+        }
+
+        val ordered = arrayOfNulls<String>(literalIds.size)
+        literalIds.forEach { (literal, id) -> ordered[id] = literal }
+
+        @Suppress("UNCHECKED_CAST")
+        return Snapshot(LiteralMatcher(ordered as Array<String>), requirements)
+    }
+
+    /**
+     * Extracts the literal segments of a string criteria, which must all appear in a message
+     * for the criteria's regex to match. [criteria] is expected to already have its newlines
+     * replaced by "->newLine<-".
+     */
+    fun extractLiterals(criteria: String): List<String> {
+        return criteria.split(VARIABLE_REGEX)
+            .filter { it.length >= MIN_LITERAL_LENGTH }
+            .map(::foldCase)
+            .distinct()
+    }
+
+    // Case-folds each char individually, the same way java.util.regex does for
+    // CASE_INSENSITIVE | UNICODE_CASE. Both the literals and the messages are folded,
+    // which makes the automaton match a superset of case-sensitive and case-insensitive
+    // criteria alike.
+    fun foldCase(text: String): String {
+        val chars = CharArray(text.length)
+        for (i in text.indices)
+            chars[i] = Character.toLowerCase(Character.toUpperCase(text[i]))
+        return String(chars)
+    }
+
+    class Snapshot(
+        private val matcher: LiteralMatcher,
+        private val requirements: IdentityHashMap<ChatTrigger, IntArray>,
+    ) {
+        fun scan(message: String): BitSet = matcher.scan(foldCase(message))
+
+        fun canMatch(trigger: ChatTrigger, hits: BitSet): Boolean {
+            val required = requirements[trigger] ?: return true
+            for (id in required) {
+                if (!hits[id])
+                    return false
+            }
+            return true
+        }
+
+        companion object {
+            val EMPTY = Snapshot(LiteralMatcher(emptyArray()), IdentityHashMap())
+        }
+    }
+
+    /**
+     * A flattened Aho-Corasick automaton. The children of each node are stored as sorted
+     * parallel arrays so that scanning a message does not allocate or box chars.
+     */
+    class LiteralMatcher(literals: Array<String>) {
+        private val edgeChars: Array<CharArray>
+        private val edgeTargets: Array<IntArray>
+        private val fail: IntArray
+        private val outputs: Array<IntArray>
+        private val isEmpty = literals.isEmpty()
+
+        init {
+            val children = mutableListOf(TreeMap<Char, Int>())
+            val nodeOutputs = mutableListOf(mutableListOf<Int>())
+
+            literals.forEachIndexed { id, literal ->
+                var node = 0
+                for (ch in literal) {
+                    node = children[node].getOrPut(ch) {
+                        children.add(TreeMap())
+                        nodeOutputs.add(mutableListOf())
+                        children.lastIndex
+                    }
+                }
+                nodeOutputs[node].add(id)
+            }
+
+            edgeChars = Array(children.size) { children[it].keys.toCharArray() }
+            edgeTargets = Array(children.size) { children[it].values.toIntArray() }
+            fail = IntArray(children.size)
+
+            // Breadth-first so that a node's failure link is finalized before its children's
+            val queue = ArrayDeque<Int>()
+            edgeTargets[0].forEach(queue::add)
+            while (queue.isNotEmpty()) {
+                val node = queue.removeFirst()
+                nodeOutputs[node].addAll(nodeOutputs[fail[node]])
+
+                for (i in edgeChars[node].indices) {
+                    val ch = edgeChars[node][i]
+                    val child = edgeTargets[node][i]
+
+                    var state = fail[node]
+                    while (state != 0 && next(state, ch) < 0)
+                        state = fail[state]
+                    fail[child] = next(state, ch).takeIf { it >= 0 } ?: 0
+
+                    queue.add(child)
+                }
+            }
+
+            outputs = Array(children.size) { nodeOutputs[it].distinct().toIntArray() }
+        }
+
+        private fun next(node: Int, ch: Char): Int {
+            val index = edgeChars[node].binarySearch(ch)
+            return if (index >= 0) edgeTargets[node][index] else -1
+        }
+
+        fun scan(text: String): BitSet {
+            val hits = BitSet()
+            if (isEmpty)
+                return hits
+
+            var node = 0
+            for (ch in text) {
+                var target = next(node, ch)
+                while (target < 0 && node != 0) {
+                    node = fail[node]
+                    target = next(node, ch)
+                }
+                node = if (target < 0) 0 else target
+
+                for (id in outputs[node])
+                    hits.set(id)
+            }
+
+            return hits
+        }
+    }
+
+    // Mirrors the two placeholder replacements done in ChatTrigger.setChatCriteria
+    private val VARIABLE_REGEX = Regex("\\$\\{[^*]+?}|\\$\\{\\*?}")
+
+    // Single characters hit almost every message and would only bloat the automaton
+    private const val MIN_LITERAL_LENGTH = 2
+}
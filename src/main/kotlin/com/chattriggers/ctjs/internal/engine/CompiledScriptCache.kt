@@ -0,0 +1,132 @@
+package com.chattriggers.ctjs.internal.engine
+
+import com.chattriggers.ctjs.CTJS
+import org.mozilla.javascript.CompilerEnvirons
+import org.mozilla.javascript.Context
+import org.mozilla.javascript.EvaluatorException
+import org.mozilla.javascript.Script
+import org.mozilla.javascript.optimizer.ClassCompiler
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+
+/**
+ * Persists the bytecode Rhino generates for module scripts, so unchanged files don't need
+ * to be parsed and compiled again on every reload and launch.
+ *
+ * Entries are stored per source file and are only used if the file's contents, the Rhino
+ * and ChatTriggers versions, and the compiler settings all match what they were compiled
+ * with. Otherwise the script is compiled again and the entry is replaced.
+ */
+internal object CompiledScriptCache {
+    private const val MAGIC = 0x43545343 // "CTSC"
+    private const val CLASS_PREFIX = "org.mozilla.javascript.gen.ct_"
+
+    private val cacheFolder = File(CTJS.configLocation, "ChatTriggers/scripts")
+
+    fun compile(cx: Context, source: String, sourceName: String, securityDomain: Any?): Script {
+        // Interpreted scripts have no bytecode to cache
+        if (cx.optimizationLevel < 0)
+            return cx.compileString(source, sourceName, 1, securityDomain)
+
+        val nameHash = sha256(sourceName)
+        val file = File(cacheFolder, "$nameHash.bin")
+        val key = listOf(
+            cx.implementationVersion,
+            CTJS.MOD_VERSION,
+            cx.optimizationLevel,
+            cx.languageVersion,
+            sha256(source),
+        ).joinToString("|")
+
+        readEntry(file, key)?.let { classes ->
+            try {
+                return loadScript(cx, classes)
+            } catch (e: Throwable) {
+                file.delete()
+            }
+        }
+
+        val classes = try {
+            val environment = CompilerEnvirons().apply { initFromContext(cx) }
+            val output = ClassCompiler(environment).compileToClassFiles(source, sourceName, 1, CLASS_PREFIX + nameHash)
+            List(output.size / 2) { output[it * 2] as String to output[it * 2 + 1] as ByteArray }
+        } catch (e: EvaluatorException) {
+            // Syntax errors have already been reported through the context's error reporter
+            throw e
+        } catch (e: Throwable) {
+            // Some scripts can't be compiled to classes, e.g. if a function exceeds the JVM's
+            // method size limit. Rhino falls back to interpreting these, so let it handle them
+            return cx.compileString(source, sourceName, 1, securityDomain)
+        }
+
+        try {
+            writeEntry(file, key, classes)
+        } catch (e: Exception) {
+            // The cache is only an optimization, so the script can still be used
+        }
+
+        return loadScript(cx, classes)
+    }
+
+    private fun loadScript(cx: Context, classes: List<Pair<String, ByteArray>>): Script {
+        val loader = cx.createClassLoader(cx.applicationClassLoader)
+
+        // The script class is always first, followed by any supporting classes
+        val defined = classes.map { (name, bytes) -> loader.defineClass(name, bytes) }
+        defined.forEach(loader::linkClass)
+
+        return defined.first().getDeclaredConstructor().newInstance() as Script
+    }
+
+    private fun readEntry(file: File, key: String): List<Pair<String, ByteArray>>? {
+        if (!file.exists())
+            return null
+
+        return try {
+            DataInputStream(file.inputStream().buffered()).use { input ->
+                if (input.readInt() != MAGIC || input.readUTF() != key)
+                    return null
+
+                List(input.readInt()) {
+                    val name = input.readUTF()
+                    val bytes = ByteArray(input.readInt())
+                    input.readFully(bytes)
+                    name to bytes
+                }
+            }
+        } catch (e: Exception) {
+            null
+        }
+    }
+
+    private fun writeEntry(file: File, key: String, classes: List<Pair<String, ByteArray>>) {
+        cacheFolder.mkdirs()
+
+        val tempFile = File.createTempFile("script", ".tmp", cacheFolder)
+        try {
+            DataOutputStream(tempFile.outputStream().buffered()).use { out ->
+                out.writeInt(MAGIC)
+                out.writeUTF(key)
+                out.writeInt(classes.size)
+                classes.forEach { (name, bytes) ->
+                    out.writeUTF(name)
+                    out.writeInt(bytes.size)
+                    out.write(bytes)
+                }
+            }
+
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        } finally {
+            tempFile.delete()
+        }
+    }
+
+    private fun sha256(string: String): String {
+        val digest = MessageDigest.getInstance("SHA-256").digest(string.toByteArray())
+        return digest.joinToString("") { "%02x".format(it) }
+    }
+}
@@ -1,21 +1,25 @@
 package com.chattriggers.ctjs.internal.engine
 
+import com.chattriggers.ctjs.api.triggers.ClassFilterTrigger
 import com.chattriggers.ctjs.api.triggers.ITriggerType
 import com.chattriggers.ctjs.api.triggers.Trigger
+import com.chattriggers.ctjs.api.triggers.TriggerType
 import com.chattriggers.ctjs.engine.LogType
 import com.chattriggers.ctjs.engine.MixinCallback
 import com.chattriggers.ctjs.engine.printToConsole
 import com.chattriggers.ctjs.engine.printTraceToConsole
 import com.chattriggers.ctjs.internal.engine.module.Module
+import com.chattriggers.ctjs.internal.engine.module.ModuleManager
 import com.chattriggers.ctjs.internal.engine.module.ModuleManager.modulesFolder
 import com.chattriggers.ctjs.internal.launch.IInjector
 import com.chattriggers.ctjs.internal.launch.Mixin
 import com.chattriggers.ctjs.internal.launch.MixinDetails
 import org.apache.commons.io.FileUtils
 import org.mozilla.javascript.*
+import org.mozilla.javascript.commonjs.module.ModuleScript
 import org.mozilla.javascript.commonjs.module.ModuleScriptProvider
 import org.mozilla.javascript.commonjs.module.Require
-import org.mozilla.javascript.commonjs.module.provider.StrongCachingModuleScriptProvider
+import org.mozilla.javascript.commonjs.module.provider.ModuleSourceProvider
 import org.mozilla.javascript.commonjs.module.provider.UrlModuleSourceProvider
 import java.io.File
 import java.lang.invoke.MethodHandles
@@ -23,15 +27,22 @@ import java.lang.invoke.MethodType
 import java.net.URI
 import java.net.URL
 import java.nio.charset.Charset
+import java.util.*
 import java.util.concurrent.ConcurrentHashMap
-import java.util.concurrent.ConcurrentSkipListSet
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
 import kotlin.contracts.ExperimentalContracts
 import kotlin.contracts.InvocationKind
 import kotlin.contracts.contract
 
 @OptIn(ExperimentalContracts::class)
 object JSLoader {
-    private val triggers = ConcurrentHashMap<ITriggerType, ConcurrentSkipListSet<Trigger>>()
+    // Built-in types are fixed, so their lists are created up front and the map is never
+    // structurally modified after this, which makes unsynchronized reads safe
+    private val builtinTriggers = EnumMap<TriggerType, TriggerList>(TriggerType::class.java).apply {
+        TriggerType.entries.forEach { put(it, TriggerList()) }
+    }
+    private val customTriggers = ConcurrentHashMap<ITriggerType, TriggerList>()
 
     private lateinit var moduleScope: Scriptable
     private lateinit var evalScope: Scriptable
@@ -61,7 +72,7 @@ object JSLoader {
 
         val cx = JSContextFactory.enterContext()
         val sourceProvider = UrlModuleSourceProvider(listOf(modulesFolder.toURI()), listOf())
-        moduleProvider = StrongCachingModuleScriptProvider(sourceProvider)
+        moduleProvider = CachingModuleScriptProvider(sourceProvider)
         moduleScope = ImporterTopLevel(cx)
         evalScope = ImporterTopLevel(cx)
         require = CTRequire(moduleProvider)
@@ -110,6 +121,44 @@ object JSLoader {
         }
     }
 
+    /**
+     * Compiles [files] on a pool of worker threads ahead of the entry pass, so loading the
+     * modules afterwards only has to execute them in order. Files which fail to compile
+     * here are simply compiled again when they are required, which reports the error.
+     */
+    fun precompile(files: List<File>) {
+        if (files.isEmpty())
+            return
+
+        val provider = moduleProvider as CachingModuleScriptProvider
+        val threadCount = (Runtime.getRuntime().availableProcessors() - 1).coerceIn(1, files.size)
+        val threadId = AtomicInteger()
+
+        // Each worker enters a single Context for its whole lifetime
+        val executor = Executors.newFixedThreadPool(threadCount) { runnable ->
+            Thread({
+                JSContextFactory.call { cx ->
+                    cx.errorReporter = SilentErrorReporter
+                    runnable.run()
+                }
+            }, "ChatTriggers Compiler-${threadId.getAndIncrement()}").apply { isDaemon = true }
+        }
+
+        try {
+            files.map { file ->
+                executor.submit {
+                    try {
+                        provider.precompile(Context.getCurrentContext(), file.toURI())
+                    } catch (e: Throwable) {
+                        // Reported during the entry pass instead
+                    }
+                }
+            }.forEach { it.get() }
+        } finally {
+            executor.shutdown()
+        }
+    }
+
     fun entryPass(module: Module, entryURI: URI): Unit = wrapInContext {
         try {
             require.loadCTModule(module.name, entryURI)
@@ -121,19 +170,101 @@ object JSLoader {
     }
 
     fun exec(type: ITriggerType, args: Array<out Any?>) {
-        triggers[type]?.forEach { it.trigger(args) }
+        // Indexed iteration over the snapshot array, which doesn't allocate an iterator
+        for (trigger in getTriggerList(type)?.triggers ?: return)
+            trigger.trigger(args)
+    }
+
+    /**
+     * Whether any trigger is registered for [type]. Hot call sites should check this before
+     * building the arguments for [exec], since that often means wrapping MC objects that
+     * would otherwise be thrown away immediately.
+     */
+    @JvmStatic
+    fun hasTriggers(type: ITriggerType) = getTriggerList(type)?.triggers?.isNotEmpty() == true
+
+    /**
+     * Whether any trigger of [type] would run for an object of class [clazz]. [type] must be
+     * a trigger type whose triggers are [ClassFilterTrigger]s.
+     */
+    @JvmStatic
+    fun hasTriggers(type: ITriggerType, clazz: Class<*>) = getTriggerList(type)?.forClass(clazz)?.isNotEmpty() == true
+
+    /**
+     * Like [exec], but only runs the triggers whose class filter accepts [clazz], without
+     * checking each trigger's filter again. [clazz] is the class of the unwrapped first
+     * argument, e.g. the Minecraft entity for [TriggerType.RENDER_ENTITY].
+     */
+    @JvmStatic
+    fun execClassFiltered(type: ITriggerType, clazz: Class<*>, args: Array<out Any?>) {
+        for (trigger in getTriggerList(type)?.forClass(clazz) ?: return) {
+            if (trigger is ClassFilterTrigger<*, *>) {
+                trigger.triggerMatched(args)
+            } else trigger.trigger(args)
+        }
+    }
+
+    /**
+     * Forgets which triggers of [type] run for which classes, after a trigger's class
+     * filter changes
+     */
+    fun invalidateClassFilters(type: ITriggerType) {
+        getTriggerList(type)?.invalidateClasses()
     }
 
     fun addTrigger(trigger: Trigger) {
-        triggers.getOrPut(trigger.type, ::ConcurrentSkipListSet).add(trigger)
+        val list = getTriggerList(trigger.type) ?: customTriggers.getOrPut(trigger.type, ::TriggerList)
+        list.add(trigger)
     }
 
     fun clearTriggers() {
-        triggers.clear()
+        builtinTriggers.values.forEach(TriggerList::clear)
+        customTriggers.clear()
+        ChatCriteriaIndex.clear()
     }
 
     fun removeTrigger(trigger: Trigger) {
-        triggers[trigger.type]?.remove(trigger)
+        getTriggerList(trigger.type)?.remove(trigger)
+    }
+
+    /**
+     * Unregisters every trigger created by [module]
+     */
+    fun removeTriggers(module: String) {
+        (builtinTriggers.values + customTriggers.values).forEach { list ->
+            list.triggers.filter { it.module == module }.forEach(Trigger::unregister)
+        }
+    }
+
+    /**
+     * Like [exec], but only runs the triggers created by [module]
+     */
+    fun execForModule(type: ITriggerType, module: String, args: Array<out Any?>) {
+        for (trigger in getTriggerList(type)?.triggers ?: return) {
+            if (trigger.module == module)
+                trigger.trigger(args)
+        }
+    }
+
+    /**
+     * Forgets the compiled scripts and exports of [modules] so that they are executed again
+     * the next time they are required
+     *
+     * @return false if the exports could not be cleared, in which case a full reload is needed
+     */
+    fun invalidateModules(modules: Set<String>): Boolean {
+        // Modules are cached either by a bare id such as "ModuleName/file", or by the full
+        // URI of the file for relative requires
+        fun isInModules(id: String) = id.substringBefore('/') in modules ||
+            ModuleManager.getModuleNameForSource(id)?.let { it in modules } == true
+
+        (moduleProvider as CachingModuleScriptProvider).invalidate(::isInModules)
+        return require.invalidate(::isInModules)
+    }
+
+    private fun getTriggerList(type: ITriggerType) = when (type) {
+        is TriggerType -> builtinTriggers[type]
+        else -> customTriggers[type]
     }
 
     // Note: block takes a Context since most caller use it. Context.getContext() is a threadlocal access, so we might
@@ -183,10 +314,15 @@ object JSLoader {
     fun trigger(trigger: Trigger, method: Any, args: Array<out Any?>) {
         try {
             require(method is Callable) { "Need to pass actual function to the register function, not the name!" }
-            invoke(method, args)
+
+            if (TriggerProfiler.isRunning) {
+                TriggerProfiler.profile(trigger, method) { invoke(method, args) }
+            } else {
+                invoke(method, args)
+            }
         } catch (e: Throwable) {
             e.printTraceToConsole()
-            removeTrigger(trigger)
+            trigger.unregister()
         }
     }
 
@@ -300,11 +436,169 @@ object JSLoader {
         return res
     }
 
+    /**
+     * A copy-on-write list of triggers. Writers rebuild a new array sorted by priority,
+     * and readers only ever see a complete snapshot through a single volatile read.
+     */
+    private class TriggerList {
+        @Volatile
+        var triggers: Array<Trigger> = emptyArray()
+            private set
+
+        @Volatile
+        private var classCache = ClassCache(triggers)
+
+        /**
+         * @return the triggers that would run for an object of class [clazz], in priority order
+         */
+        fun forClass(clazz: Class<*>): Array<Trigger> {
+            val current = triggers
+            var cache = classCache
+
+            // The cache is tied to the snapshot it was built from, so it is thrown away
+            // whenever a trigger is added or removed
+            if (cache.source !== current) {
+                cache = ClassCache(current)
+                classCache = cache
+            }
+
+            return cache.get(clazz)
+        }
+
+        fun invalidateClasses() {
+            classCache = ClassCache(triggers)
+        }
+
+        @Synchronized
+        fun add(trigger: Trigger) {
+            val current = triggers
+            if (trigger in current)
+                return
+
+            val newTriggers = current.copyOf(current.size + 1)
+            newTriggers[current.size] = trigger
+
+            @Suppress("UNCHECKED_CAST")
+            triggers = (newTriggers as Array<Trigger>).apply { sort() }
+        }
+
+        @Synchronized
+        fun remove(trigger: Trigger) {
+            val current = triggers
+            val index = current.indexOf(trigger)
+            if (index == -1)
+                return
+
+            triggers = Array(current.size - 1) {
+                current[if (it < index) it else it + 1]
+            }
+        }
+
+        @Synchronized
+        fun clear() {
+            triggers = emptyArray()
+        }
+    }
+
+    private class ClassCache(val source: Array<Trigger>) {
+        private val byClass = ConcurrentHashMap<Class<*>, Array<Trigger>>()
+
+        // Most of the time no trigger has a filter, so every class can share the snapshot
+        private val unfiltered = source.none { it is ClassFilterTrigger<*, *> && it.isFiltered }
+
+        fun get(clazz: Class<*>): Array<Trigger> {
+            if (unfiltered)
+                return source
+
+            return byClass.getOrPut(clazz) {
+                source.filter { it !is ClassFilterTrigger<*, *> || it.matches(clazz) }.toTypedArray()
+            }
+        }
+    }
+
+    /**
+     * Loads module scripts through [CompiledScriptCache] instead of always compiling them.
+     * A new provider is created on every load, so scripts are only cached in memory for the
+     * lifetime of a single load.
+     */
+    private class CachingModuleScriptProvider(
+        private val sourceProvider: ModuleSourceProvider,
+    ) : ModuleScriptProvider {
+        private val scripts = ConcurrentHashMap<String, ModuleScript>()
+        private val precompiled = ConcurrentHashMap<URI, Script>()
+
+        fun invalidate(predicate: (String) -> Boolean) {
+            scripts.keys.removeIf(predicate)
+        }
+
+        fun precompile(cx: Context, uri: URI) {
+            val source = sourceProvider.loadSource(uri, null, null) ?: return
+            val text = source.reader.use { it.readText() }
+            val sourceUri = source.uri.normalize()
+            precompiled[sourceUri] = CompiledScriptCache.compile(cx, text, source.uri.toString(), source.securityDomain)
+        }
+
+        override fun getModuleScript(
+            cx: Context,
+            moduleId: String,
+            moduleUri: URI?,
+            baseUri: URI?,
+            paths: Scriptable?,
+        ): ModuleScript? {
+            scripts[moduleId]?.let { return it }
+
+            val source = if (moduleUri != null) {
+                sourceProvider.loadSource(moduleUri, baseUri, null)
+            } else {
+                sourceProvider.loadSource(moduleId, paths, null)
+            } ?: return null
+
+            val script = source.reader.use { reader ->
+                precompiled.remove(source.uri.normalize())
+                    ?: CompiledScriptCache.compile(cx, reader.readText(), source.uri.toString(), source.securityDomain)
+            }
+
+            return ModuleScript(script, source.uri, source.base).let {
+                scripts.putIfAbsent(moduleId, it) ?: it
+            }
+        }
+    }
+
+    // Used while precompiling, since any errors will be reported when the script is
+    // compiled again during the entry pass
+    private object SilentErrorReporter : ErrorReporter {
+        override fun warning(message: String?, sourceName: String?, line: Int, lineSource: String?, lineOffset: Int) {}
+
+        override fun error(message: String?, sourceName: String?, line: Int, lineSource: String?, lineOffset: Int) {}
+
+        override fun runtimeError(
+            message: String?,
+            sourceName: String?,
+            line: Int,
+            lineSource: String?,
+            lineOffset: Int
+        ) = EvaluatorException(message, sourceName, line, lineSource, lineOffset)
+    }
+
     private class CTRequire(
         moduleProvider: ModuleScriptProvider,
     ) : Require(Context.getContext(), moduleScope, moduleProvider, null, null, false) {
         fun loadCTModule(cachedName: String, uri: URI): Scriptable {
             return getExportedModuleInterface(Context.getContext(), cachedName, uri, null, false)
         }
+
+        // Require keeps no public handle on its exports cache, so this reaches in reflectively
+        fun invalidate(predicate: (String) -> Boolean): Boolean {
+            return try {
+                val field = Require::class.java.getDeclaredField("exportedModuleInterfaces")
+                field.isAccessible = true
+
+                @Suppress("UNCHECKED_CAST")
+                (field.get(this) as MutableMap<String, *>).keys.removeIf(predicate)
+                true
+            } catch (e: ReflectiveOperationException) {
+                false
+            }
+        }
     }
 }
@@ -0,0 +1,166 @@
+package com.chattriggers.ctjs.internal.engine
+
+import com.chattriggers.ctjs.api.client.Client
+import com.chattriggers.ctjs.engine.printTraceToConsole
+import org.mozilla.javascript.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.ScheduledThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Backs the `setTimeout` and `setInterval` JS globals. All timers share a single
+ * daemon thread, but it is only used to keep time: when a timer fires, its callback is
+ * handed off to a module thread (or the client thread, if asked), so a slow callback
+ * can't hold up any other timer. An interval never runs its callback again while the
+ * previous run is still going.
+ */
+object JSTimers {
+    private val executor = ScheduledThreadPoolExecutor(1) { runnable ->
+        Thread(runnable, "ChatTriggers Timers").apply { isDaemon = true }
+    }.apply {
+        removeOnCancelPolicy = true
+    }
+
+    private val timers = ConcurrentHashMap<Int, Timer>()
+    private val nextId = AtomicInteger(1)
+
+    /**
+     * Calls [callback] once after [delay] milliseconds
+     *
+     * @return the id of the timer, which can be passed to [clear]
+     */
+    @JvmOverloads
+    fun setTimeout(
+        callback: Callable,
+        delay: Long,
+        onClientThread: Boolean = false,
+        args: List<Any?> = emptyList(),
+    ): Int {
+        val id = nextId.getAndIncrement()
+        val timer = Timer(ModuleThreads.getCallingModule())
+        val task = makeTask(timer, callback, onClientThread, args.toTypedArray())
+
+        // The timer is tracked before it is scheduled, so it can't finish before it is in the map
+        timers[id] = timer
+        timer.start(executor.schedule(Runnable {
+            timers.remove(id)
+            task()
+        }, delay.coerceAtLeast(0), TimeUnit.MILLISECONDS))
+
+        return id
+    }
+
+    /**
+     * Calls [callback] every [delay] milliseconds until it is cleared
+     *
+     * @return the id of the timer, which can be passed to [clear]
+     */
+    @JvmOverloads
+    fun setInterval(
+        callback: Callable,
+        delay: Long,
+        onClientThread: Boolean = false,
+        args: List<Any?> = emptyList(),
+    ): Int {
+        val id = nextId.getAndIncrement()
+        val timer = Timer(ModuleThreads.getCallingModule())
+        val task = makeTask(timer, callback, onClientThread, args.toTypedArray())
+        val period = delay.coerceAtLeast(1)
+
+        timers[id] = timer
+        timer.start(executor.scheduleAtFixedRate(Runnable(task), period, period, TimeUnit.MILLISECONDS))
+
+        return id
+    }
+
+    /**
+     * Cancels the timeout or interval with the given [id]. Unknown ids are ignored.
+     */
+    fun clear(id: Int) {
+        timers.remove(id)?.cancel()
+    }
+
+    internal fun clearAll() {
+        timers.values.forEach(Timer::cancel)
+        timers.clear()
+    }
+
+    /**
+     * Cancels every timeout and interval created by [module]
+     */
+    internal fun clearModule(module: String) {
+        timers.entries.removeIf { (_, timer) ->
+            if (timer.module == module) {
+                timer.cancel()
+                true
+            } else false
+        }
+    }
+
+    private fun makeTask(timer: Timer, callback: Callable, onClientThread: Boolean, args: Array<Any?>): () -> Unit {
+        val run: () -> Unit = {
+            try {
+                // The timer may have been cleared after this run was handed off
+                if (!timer.isCancelled)
+                    JSLoader.invoke(callback, args)
+            } finally {
+                timer.isRunning.set(false)
+            }
+        }
+
+        val handOff: () -> Unit = if (onClientThread) {
+            {
+                Client.scheduleTask {
+                    try {
+                        run()
+                    } catch (e: Throwable) {
+                        e.printTraceToConsole()
+                    }
+                }
+            }
+        } else {
+            { ModuleThreads.start(timer.module, Runnable(run)) }
+        }
+
+        return {
+            // Like in a browser, an interval whose callback is still running skips its next
+            // run instead of running the callback again at the same time
+            if (timer.isRunning.compareAndSet(false, true)) {
+                try {
+                    handOff()
+                } catch (e: Throwable) {
+                    timer.isRunning.set(false)
+                    throw e
+                }
+            }
+        }
+    }
+
+    private class Timer(val module: String) {
+        @Volatile
+        private var future: ScheduledFuture<*>? = null
+
+        @Volatile
+        var isCancelled = false
+            private set
+
+        // Whether a run has been handed off and hasn't finished yet
+        val isRunning = AtomicBoolean()
+
+        fun start(future: ScheduledFuture<*>) {
+            this.future = future
+
+            // Cleared from another thread before the future was set
+            if (isCancelled)
+                future.cancel(false)
+        }
+
+        fun cancel() {
+            isCancelled = true
+            future?.cancel(false)
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.chattriggers.ctjs.internal.engine
+
+import com.chattriggers.ctjs.api.Config
+import com.chattriggers.ctjs.engine.LogType
+import com.chattriggers.ctjs.engine.WrappedThread
+import com.chattriggers.ctjs.engine.printToConsole
+import com.chattriggers.ctjs.engine.printTraceToConsole
+import com.chattriggers.ctjs.internal.engine.module.ModuleManager
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Semaphore
+
+/**
+ * Runs the tasks of every [WrappedThread] on its own virtual thread, so modules doing
+ * blocking I/O don't tie up the common ForkJoinPool shared with Minecraft and Fabric.
+ *
+ * Each module may only have [Config.moduleThreadLimit] tasks running at once; any
+ * others wait for a permit (which is cheap for a virtual thread). Threads are tracked
+ * per module so they can be interrupted when modules are unloaded.
+ */
+internal object ModuleThreads {
+    private const val UNKNOWN_MODULE = "<unknown>"
+
+    private val factory = Thread.ofVirtual().name("ChatTriggers Module Thread-", 0).factory()
+    private val permits = ConcurrentHashMap<String, Semaphore>()
+    private val threads = ConcurrentHashMap<String, MutableSet<Thread>>()
+
+    /**
+     * @return the name of the module whose JS code is currently calling into Java, or a
+     *         placeholder if it can't be determined
+     */
+    fun getCallingModule() = ModuleManager.getCallingModule() ?: UNKNOWN_MODULE
+
+    fun start(module: String, task: Runnable): Thread {
+        val moduleThreads = threads.computeIfAbsent(module) { ConcurrentHashMap.newKeySet() }
+
+        val thread = factory.newThread {
+            val semaphore = permits.computeIfAbsent(module) {
+                Semaphore(Config.moduleThreadLimit.coerceAtLeast(1))
+            }
+
+            try {
+                semaphore.acquire()
+            } catch (e: InterruptedException) {
+                moduleThreads.remove(Thread.currentThread())
+                return@newThread
+            }
+
+            try {
+                // Every virtual thread is a fresh thread, so it needs its own Context
+                JSLoader.wrapInContext { task.run() }
+            } catch (e: Throwable) {
+                e.printTraceToConsole()
+            } finally {
+                semaphore.release()
+                moduleThreads.remove(Thread.currentThread())
+            }
+        }
+
+        moduleThreads.add(thread)
+        thread.start()
+        return thread
+    }
+
+    /**
+     * Interrupts all threads started by [module] and waits up to [timeoutMillis] for them
+     * to finish
+     */
+    fun stopModule(module: String, timeoutMillis: Long) {
+        stop(listOfNotNull(threads.remove(module)), timeoutMillis)
+        permits.remove(module)
+    }
+
+    /**
+     * Interrupts all threads started by any module and waits up to [timeoutMillis] in total
+     * for them to finish
+     */
+    fun stopAll(timeoutMillis: Long) {
+        val allThreads = threads.values.toList()
+        threads.clear()
+        permits.clear()
+        stop(allThreads, timeoutMillis)
+    }
+
+    private fun stop(threadSets: List<Set<Thread>>, timeoutMillis: Long) {
+        val toStop = threadSets.flatMap { it.toList() }
+        toStop.forEach(Thread::interrupt)
+
+        val deadline = System.nanoTime() + timeoutMillis * 1_000_000
+        for (thread in toStop) {
+            val remaining = (deadline - System.nanoTime()) / 1_000_000
+            if (remaining <= 0)
+                break
+            thread.join(remaining)
+        }
+
+        val alive = toStop.count(Thread::isAlive)
+        if (alive > 0)
+            "$alive module thread(s) did not stop after being interrupted".printToConsole(LogType.WARN)
+    }
+}
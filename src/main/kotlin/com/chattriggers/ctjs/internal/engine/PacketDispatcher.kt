@@ -0,0 +1,143 @@
+package com.chattriggers.ctjs.internal.engine
+
+import com.chattriggers.ctjs.api.Config
+import com.chattriggers.ctjs.api.client.Client
+import com.chattriggers.ctjs.api.triggers.PacketTrigger
+import com.chattriggers.ctjs.engine.LogType
+import com.chattriggers.ctjs.engine.printToConsole
+import com.chattriggers.ctjs.engine.printTraceToConsole
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.LockSupport
+import kotlin.concurrent.thread
+
+/**
+ * Runs packet triggers that don't need to cancel their packet somewhere other than the
+ * Netty event loop, so slow handlers can't hold up the connection. See
+ * [PacketTrigger.DispatchMode].
+ *
+ * Each mode has its own queue of at most [Config.packetQueueSize] packets. Packets that
+ * arrive while a queue is full are dropped, and counted on the trigger they were meant for.
+ */
+internal object PacketDispatcher {
+    // Don't flood the console if a trigger keeps falling behind
+    private const val DROP_WARNING_INTERVAL_MILLIS = 10_000L
+
+    private val asyncQueue = TaskQueue()
+    private val clientQueue = TaskQueue()
+    private val clientDrainScheduled = AtomicBoolean()
+
+    private val droppedSinceWarning = AtomicLong()
+    @Volatile
+    private var lastDropWarning = 0L
+
+    // The worker enters a single Context for its whole lifetime, separate from the one
+    // shared by inline packet triggers
+    private val worker by lazy {
+        thread(isDaemon = true, name = "ChatTriggers Packet Worker") {
+            JSContextFactory.enterContext()
+
+            while (true) {
+                val task = asyncQueue.poll()
+                if (task == null) {
+                    LockSupport.park(this)
+                    continue
+                }
+                task.run()
+            }
+        }
+    }
+
+    /**
+     * Queues a packet for a [PacketTrigger.DispatchMode.ASYNC] or
+     * [PacketTrigger.DispatchMode.CLIENT_THREAD] trigger. Inline triggers run themselves.
+     */
+    fun dispatch(trigger: PacketTrigger, mode: PacketTrigger.DispatchMode, args: Array<out Any?>) {
+        if (mode == PacketTrigger.DispatchMode.ASYNC) {
+            if (asyncQueue.offer(Task(trigger, args))) {
+                LockSupport.unpark(worker)
+            } else dropped(trigger)
+            return
+        }
+
+        val client = Client.getMinecraft()
+        if (client.isOnThread) {
+            trigger.runQueued(args)
+        } else if (clientQueue.offer(Task(trigger, args))) {
+            // Schedule one drain for however many packets arrive before it runs
+            if (clientDrainScheduled.compareAndSet(false, true))
+                client.execute(::drainClientQueue)
+        } else dropped(trigger)
+    }
+
+    /**
+     * Throws away every queued packet
+     */
+    fun clear() {
+        asyncQueue.clear()
+        clientQueue.clear()
+    }
+
+    private fun drainClientQueue() {
+        clientDrainScheduled.set(false)
+
+        while (true)
+            (clientQueue.poll() ?: return).run()
+    }
+
+    private fun dropped(trigger: PacketTrigger) {
+        trigger.droppedPackets.incrementAndGet()
+        droppedSinceWarning.incrementAndGet()
+
+        val now = System.currentTimeMillis()
+        if (now - lastDropWarning >= DROP_WARNING_INTERVAL_MILLIS) {
+            lastDropWarning = now
+            val dropped = droppedSinceWarning.getAndSet(0)
+            "Dropped $dropped packet(s) because packet triggers could not keep up".printToConsole(LogType.WARN)
+        }
+    }
+
+    private class Task(val trigger: PacketTrigger, val args: Array<out Any?>) {
+        fun run() {
+            // The trigger may have been unregistered, or its module unloaded, since this was queued
+            if (!trigger.isRegistered)
+                return
+
+            try {
+                trigger.runQueued(args)
+            } catch (e: Throwable) {
+                e.printTraceToConsole()
+            }
+        }
+    }
+
+    /**
+     * A lock-free queue that holds at most [Config.packetQueueSize] tasks
+     */
+    private class TaskQueue {
+        private val tasks = ConcurrentLinkedQueue<Task>()
+        private val size = AtomicInteger()
+
+        fun offer(task: Task): Boolean {
+            if (size.incrementAndGet() > Config.packetQueueSize) {
+                size.decrementAndGet()
+                return false
+            }
+
+            task.trigger.queuedPackets.incrementAndGet()
+            tasks.add(task)
+            return true
+        }
+
+        fun poll(): Task? = tasks.poll()?.also {
+            size.decrementAndGet()
+            it.trigger.queuedPackets.decrementAndGet()
+        }
+
+        fun clear() {
+            while (poll() != null) continue
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.chattriggers.ctjs.internal.engine
+
+import com.chattriggers.ctjs.api.Config
+import com.chattriggers.ctjs.api.triggers.StepTrigger
+import com.chattriggers.ctjs.api.triggers.TriggerType
+
+/**
+ * Drives every [StepTrigger] from the render tick. All step triggers dispatched in the
+ * same frame share one timestamp, and together they may only spend
+ * [Config.stepFrameBudget] milliseconds of the frame. Steps that don't fit in the budget
+ * are left pending for the next frame rather than being dropped.
+ */
+internal object StepScheduler {
+    /**
+     * The [System.nanoTime] at the start of the current frame's step dispatch
+     */
+    @Volatile
+    var frameTime = System.nanoTime()
+        private set
+
+    private var deadline = Long.MAX_VALUE
+
+    fun runFrame() {
+        if (!JSLoader.hasTriggers(TriggerType.STEP))
+            return
+
+        frameTime = System.nanoTime()
+        deadline = if (Config.stepFrameBudget > 0) {
+            frameTime + Config.stepFrameBudget * 1_000_000L
+        } else Long.MAX_VALUE
+
+        TriggerType.STEP.triggerAll()
+    }
+
+    fun hasBudget() = deadline == Long.MAX_VALUE || System.nanoTime() < deadline
+
+    /**
+     * The maximum amount of steps a single trigger may run in one frame, unless the
+     * trigger overrides it with [StepTrigger.setMaxCatchUp]
+     */
+    val maxCatchUp: Int
+        get() = Config.stepMaxCatchUp.coerceAtLeast(1)
+}
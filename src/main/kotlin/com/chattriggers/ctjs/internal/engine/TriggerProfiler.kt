@@ -0,0 +1,147 @@
+package com.chattriggers.ctjs.internal.engine
+
+import com.chattriggers.ctjs.CTJS
+import com.chattriggers.ctjs.api.triggers.Trigger
+import com.chattriggers.ctjs.internal.engine.module.ModuleManager
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
+import org.mozilla.javascript.BaseFunction
+import org.mozilla.javascript.Scriptable
+import org.mozilla.javascript.commonjs.module.ModuleScope
+import java.io.File
+import java.lang.management.ManagementFactory
+import java.net.URI
+import java.text.SimpleDateFormat
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * An opt-in profiler for trigger executions, controlled by `/ct profile`. While running,
+ * every call made through [JSLoader.trigger] records its wall time and, if the JVM
+ * supports it, the number of bytes it allocated on the calling thread.
+ */
+internal object TriggerProfiler {
+    private val profilesFolder = File(CTJS.configLocation, "ChatTriggers/profiles")
+    private val prettyJson = Json { prettyPrint = true }
+
+    private val threadBean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+    private val measureAllocations = threadBean?.let {
+        it.isThreadAllocatedMemorySupported && it.isThreadAllocatedMemoryEnabled
+    } == true
+
+    private val stats = ConcurrentHashMap<Trigger, Stats>()
+    private var startTime = 0L
+    private var stopTime = 0L
+
+    @Volatile
+    var isRunning = false
+        private set
+
+    fun start() {
+        stats.clear()
+        startTime = System.nanoTime()
+        isRunning = true
+    }
+
+    fun stop() {
+        isRunning = false
+        stopTime = System.nanoTime()
+    }
+
+    fun profile(trigger: Trigger, method: Any, block: () -> Unit) {
+        val bytesBefore = allocatedBytes()
+        val timeBefore = System.nanoTime()
+
+        try {
+            block()
+        } finally {
+            val time = System.nanoTime() - timeBefore
+            val bytes = allocatedBytes() - bytesBefore
+            stats.getOrPut(trigger) { Stats(trigger.type.name, getSourceLocation(method)) }.record(time, bytes)
+        }
+    }
+
+    private fun allocatedBytes() = if (measureAllocations) threadBean!!.currentThreadAllocatedBytes else 0L
+
+    /**
+     * @return a snapshot of every profiled trigger, sorted by descending total time
+     */
+    fun getEntries(): List<Entry> = stats.values.map(Stats::toEntry).sortedByDescending(Entry::totalNanos)
+
+    /**
+     * Writes the current results to a new JSON file in the profiles folder
+     *
+     * @return the file that was written
+     */
+    fun writeReport(): File {
+        val end = if (isRunning) System.nanoTime() else stopTime
+        val report = Report(
+            durationNanos = end - startTime,
+            allocationsMeasured = measureAllocations,
+            entries = getEntries(),
+        )
+
+        profilesFolder.mkdirs()
+        val timestamp = SimpleDateFormat("yyyy-MM-dd_HH.mm.ss").format(Date())
+        return File(profilesFolder, "profile-$timestamp.json").apply {
+            writeText(prettyJson.encodeToString(report))
+        }
+    }
+
+    // Walks up the scope chain of the function until it finds the CommonJS module scope
+    // it was defined in, and resolves the module file from that
+    private fun getSourceLocation(method: Any): String {
+        val functionName = (method as? BaseFunction)?.functionName?.takeIf(String::isNotEmpty) ?: "<anonymous>"
+
+        var scope = method as? Scriptable
+        while (scope != null && scope !is ModuleScope)
+            scope = scope.parentScope
+
+        val uri = (scope as? ModuleScope)?.uri ?: return functionName
+        return "${getRelativePath(uri)}:$functionName"
+    }
+
+    private fun getRelativePath(uri: URI): String {
+        return try {
+            File(uri).relativeTo(ModuleManager.modulesFolder.absoluteFile).invariantSeparatorsPath
+        } catch (e: IllegalArgumentException) {
+            uri.toString()
+        }
+    }
+
+    private class Stats(val type: String, val location: String) {
+        private var calls = 0L
+        private var totalNanos = 0L
+        private var maxNanos = 0L
+        private var allocatedBytes = 0L
+
+        @Synchronized
+        fun record(nanos: Long, bytes: Long) {
+            calls++
+            totalNanos += nanos
+            maxNanos = maxOf(maxNanos, nanos)
+            allocatedBytes += bytes
+        }
+
+        @Synchronized
+        fun toEntry() = Entry(type, location, calls, totalNanos, maxNanos, allocatedBytes)
+    }
+
+    @Serializable
+    data class Entry(
+        val type: String,
+        val location: String,
+        val calls: Long,
+        val totalNanos: Long,
+        val maxNanos: Long,
+        val allocatedBytes: Long,
+    )
+
+    @Serializable
+    data class Report(
+        val durationNanos: Long,
+        val allocationsMeasured: Boolean,
+        val entries: List<Entry>,
+    )
+}
@@ -1,7 +1,10 @@
 package com.chattriggers.ctjs.internal.engine.module
 
 import com.chattriggers.ctjs.CTJS
+import com.chattriggers.ctjs.api.Config
+import com.chattriggers.ctjs.api.client.Client
 import com.chattriggers.ctjs.api.message.ChatLib
+import com.chattriggers.ctjs.api.triggers.TriggerType
 import com.chattriggers.ctjs.api.world.World
 import com.chattriggers.ctjs.engine.LogType
 import com.chattriggers.ctjs.engine.printToConsole
@@ -9,7 +12,9 @@ import com.chattriggers.ctjs.internal.engine.JSContextFactory
 import com.chattriggers.ctjs.internal.engine.JSLoader
 import org.apache.commons.io.FileUtils
 import org.mozilla.javascript.Context
+import org.mozilla.javascript.EvaluatorException
 import java.io.File
+import java.net.URI
 import java.net.URLClassLoader
 import java.util.*
 
@@ -20,6 +25,7 @@ object ModuleManager {
 
     fun setup() {
         modulesFolder.mkdirs()
+        ModuleUpdater.applyStagedUpdates()
 
         // Get existing modules
         val installedModules = getFoldersInDir(modulesFolder).map(::parseModule).distinctBy {
@@ -27,7 +33,7 @@ object ModuleManager {
         }
 
         // Check if those modules have updates
-        installedModules.forEach(ModuleUpdater::updateModule)
+        ModuleUpdater.updateModules(installedModules)
         cachedModules.addAll(installedModules)
 
         // Import required modules
@@ -67,17 +73,76 @@ object ModuleManager {
     fun entryPass(modules: List<Module> = cachedModules, completionListener: (percentComplete: Float) -> Unit = {}) {
         JSLoader.entrySetup()
 
-        val total = modules.count { it.metadata.entry != null }
+        val entryModules = modules.filter { it.metadata.entry != null }
+        val total = entryModules.size
         var completed = 0
 
+        // Compile every script in parallel first, as only executing the modules needs to
+        // happen in dependency order
+        JSLoader.precompile(entryModules.flatMap { module ->
+            module.folder.walk().filter { it.isFile && it.extension == "js" }.toList()
+        })
+
         // Load the modules
-        modules.filter {
-            it.metadata.entry != null
-        }.forEach {
+        entryModules.forEach {
             JSLoader.entryPass(it, File(it.folder, it.metadata.entry!!).toURI())
             completed++
             completionListener(completed.toFloat() / total)
         }
+
+        if (Config.autoReloadModules)
+            ModuleWatcher.start()
+    }
+
+    /**
+     * Unloads and re-runs only the modules in [names] and the modules which depend on them,
+     * leaving every other module untouched. Falls back to a full reload if the modules
+     * can't be reloaded on their own.
+     *
+     * This runs module code and changes key binds and commands, so it must be called on the
+     * client thread.
+     */
+    @Synchronized
+    fun reloadModules(names: Set<String>) {
+        // A full load is already running every module again, including these
+        if (CTJS.isLoading || !CTJS.isLoaded)
+            return
+
+        val affected = mutableSetOf<String>()
+        fun visit(name: String) {
+            if (affected.add(name))
+                cachedModules.find { it.name == name }?.requiredBy?.forEach(::visit)
+        }
+        names.forEach(::visit)
+
+        // cachedModules is sorted so that dependencies come before their dependents
+        val modules = cachedModules.filter { it.name in affected }
+        if (modules.size != affected.size || !JSLoader.invalidateModules(affected)) {
+            Client.scheduleTask { CTJS.load() }
+            return
+        }
+
+        modules.asReversed().forEach {
+            JSLoader.execForModule(TriggerType.GAME_UNLOAD, it.name, emptyArray())
+            CTJS.unloadModule(it.name)
+        }
+
+        val entryModules = modules.filter { it.metadata.entry != null }
+        JSLoader.precompile(entryModules.flatMap { module ->
+            module.folder.walk().filter { it.isFile && it.extension == "js" }.toList()
+        })
+
+        entryModules.forEach {
+            JSLoader.entryPass(it, File(it.folder, it.metadata.entry!!).toURI())
+        }
+
+        modules.forEach {
+            JSLoader.execForModule(TriggerType.GAME_LOAD, it.name, emptyArray())
+            if (World.isLoaded())
+                JSLoader.execForModule(TriggerType.WORLD_LOAD, it.name, emptyArray())
+        }
+
+        ChatLib.chat("&aReloaded ${modules.joinToString { it.name }}")
     }
 
     private fun getFoldersInDir(dir: File): List<File> {
@@ -175,6 +240,41 @@ object ModuleManager {
         }
     }
 
+    /**
+     * @return the name of the module whose JS code is currently calling into Java, or null
+     *         if there is none (e.g. if called from ChatTriggers itself)
+     */
+    internal fun getCallingModule(): String? {
+        // RhinoException captures the script stack on construction, for both compiled and
+        // interpreted code. The innermost frames may belong to the provided libs, so take
+        // the first one that is actually inside a module.
+        return EvaluatorException("").scriptStack.firstNotNullOfOrNull {
+            it.fileName?.let(::getModuleNameForSource)
+        }
+    }
+
+    /**
+     * @param source a script file name or URI, as reported in a JS stack trace
+     * @return the name of the module folder containing [source], or null if it isn't in one
+     */
+    internal fun getModuleNameForSource(source: String): String? {
+        val file = try {
+            if (source.startsWith("file:")) File(URI(source)) else File(source)
+        } catch (e: Exception) {
+            return null
+        }
+
+        val relative = try {
+            file.absoluteFile.normalize().relativeTo(modulesFolder.absoluteFile.normalize())
+        } catch (e: IllegalArgumentException) {
+            return null
+        }
+
+        return relative.invariantSeparatorsPath.substringBefore('/').takeIf {
+            it.isNotEmpty() && it != ".."
+        }
+    }
+
     fun teardown() {
         cachedModules.clear()
         JSLoader.clearTriggers()
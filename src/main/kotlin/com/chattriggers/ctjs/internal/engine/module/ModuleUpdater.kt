@@ -11,15 +11,36 @@ import com.chattriggers.ctjs.internal.engine.module.ModuleManager.cachedModules
 import com.chattriggers.ctjs.internal.engine.module.ModuleManager.modulesFolder
 import com.chattriggers.ctjs.internal.utils.Initializer
 import com.chattriggers.ctjs.internal.utils.toVersion
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.encodeToString
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents
 import org.apache.commons.io.FileUtils
 import java.io.File
-import java.nio.file.FileSystems
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.net.HttpURLConnection
+import java.nio.file.AtomicMoveNotSupportedException
 import java.nio.file.Files
-import java.nio.file.Paths
 import java.nio.file.StandardCopyOption
+import java.security.DigestInputStream
+import java.security.MessageDigest
+import java.util.concurrent.*
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.zip.ZipInputStream
 
 object ModuleUpdater : Initializer {
+    // How long to hold up loading for update checks before leaving them to the background
+    private const val UPDATE_WAIT_MILLIS = 3000L
+
+    // Can be pointed at a local server for testing
+    private val websiteRoot = System.getProperty("ctjs.websiteRoot") ?: CTJS.WEBSITE_ROOT
+
+    private val stagingFolder = File(CTJS.configLocation, "ChatTriggers/staged-modules")
+    private val downloadsFolder = File(CTJS.configLocation, "ChatTriggers/downloads")
+    private val metadataCacheFile = File(CTJS.configLocation, "ChatTriggers/module-metadata-cache.json")
+    private val metadataCache by lazy(::loadMetadataCache)
+
     private val changelogs = mutableListOf<ModuleMetadata>()
     private var shouldReportChangelog = false
 
@@ -47,45 +68,160 @@ object ModuleUpdater : Initializer {
         ChatLib.chat("&aChangelog: &r${module.changelog}")
     }
 
-    fun updateModule(module: Module) {
+    /**
+     * Checks every module in [modules] for updates concurrently. Updates that are found
+     * within [UPDATE_WAIT_MILLIS] are applied before returning; any that take longer keep
+     * downloading in the background and are applied the next time modules are loaded.
+     */
+    fun updateModules(modules: List<Module>) {
         if (!Config.autoUpdateModules) return
 
+        val waiting = AtomicBoolean(true)
+        val executor = Executors.newVirtualThreadPerTaskExecutor()
+        val checks = modules.map { module ->
+            module to executor.submit(Callable { stageUpdate(module, waiting) })
+        }
+        executor.shutdown()
+
+        val deadline = System.nanoTime() + UPDATE_WAIT_MILLIS * 1_000_000
+        for ((module, check) in checks) {
+            try {
+                if (check.get((deadline - System.nanoTime()).coerceAtLeast(0), TimeUnit.NANOSECONDS))
+                    applyStagedUpdate(module)
+            } catch (e: TimeoutException) {
+                // Still running, so it will be staged for the next load
+            } catch (e: ExecutionException) {
+                e.cause?.printTraceToConsole()
+            }
+        }
+
+        waiting.set(false)
+    }
+
+    /**
+     * Applies updates which finished downloading after the previous load had already started
+     */
+    fun applyStagedUpdates() {
+        stagingFolder.listFiles()?.filter(File::isDirectory)?.forEach { staged ->
+            try {
+                val module = ModuleManager.parseModule(File(modulesFolder, staged.name))
+                applyStagedUpdate(module)
+            } catch (e: Exception) {
+                e.printTraceToConsole()
+            }
+        }
+    }
+
+    // Downloads an update for [module] into the staging folder
+    //
+    // @return true if an update was staged
+    private fun stageUpdate(module: Module, waiting: AtomicBoolean): Boolean {
         val metadata = module.metadata
 
         try {
-            if (metadata.name == null) return
+            if (metadata.name == null) return false
 
             "Checking for update in ${metadata.name}".printToConsole()
 
-            val url = "${CTJS.WEBSITE_ROOT}/api/modules/${metadata.name}/metadata?modVersion=${CTJS.MOD_VERSION}"
-            val connection = CTJS.makeWebRequest(url)
-
-            val newMetadataText = connection.getInputStream().bufferedReader().readText()
-            val newMetadata = CTJS.json.decodeFromString<ModuleMetadata>(newMetadataText)
+            val url = "$websiteRoot/api/modules/${metadata.name}/metadata?modVersion=${CTJS.MOD_VERSION}"
+            val newMetadata = CTJS.json.decodeFromString<ModuleMetadata>(fetchMetadata(url))
 
             if (newMetadata.version == null) {
                 ("Remote version of module ${metadata.name} has no version numbers, so it will " +
                     "not be updated!").printToConsole(LogType.WARN)
-                return
+                return false
             } else if (metadata.version != null && metadata.version.toVersion() >= newMetadata.version.toVersion()) {
-                return
+                return false
             }
 
-            downloadModule(metadata.name)
-            "Updated module ${metadata.name}".printToConsole()
+            // Staged in a separate folder so a slow download can't change a module while it is loading.
+            // The zip's folder name may differ from the installed one, so stage it under the name
+            // applyStagedUpdate looks for.
+            val staged = File(stagingFolder, module.folder.name)
+            staged.deleteRecursively()
+            downloadModule(metadata.name, staged) ?: return false
 
-            module.metadata = File(module.folder, "metadata.json").let {
-                CTJS.json.decodeFromString<ModuleMetadata>(it.readText())
-            }
+            if (!waiting.get())
+                "Downloaded an update for ${metadata.name}, which will be applied on the next load".printToConsole()
 
-            if (Config.moduleChangelog && module.metadata.changelog != null) {
-                tryReportChangelog(module.metadata)
-            }
+            return true
         } catch (e: Exception) {
             "Can't find page for ${metadata.name}".printToConsole(LogType.WARN)
+            return false
+        }
+    }
+
+    private fun applyStagedUpdate(module: Module) {
+        val staged = File(stagingFolder, module.folder.name)
+        if (!staged.isDirectory) return
+
+        installDirectory(staged, module.folder)
+        // Normally moved into place already, but make sure the update isn't applied again
+        staged.deleteRecursively()
+        "Updated module ${module.name}".printToConsole()
+
+        module.metadata = File(module.folder, "metadata.json").let {
+            CTJS.json.decodeFromString<ModuleMetadata>(it.readText())
+        }
+
+        if (Config.moduleChangelog && module.metadata.changelog != null) {
+            tryReportChangelog(module.metadata)
+        }
+    }
+
+    // Fetches module metadata, reusing the cached response if it is younger than the
+    // configured TTL or if the server reports that it hasn't changed
+    private fun fetchMetadata(url: String): String {
+        val cached = metadataCache[url]
+        val ttlMillis = Config.moduleUpdateCheckInterval * 60_000L
+        if (cached != null && System.currentTimeMillis() - cached.fetchedAt < ttlMillis)
+            return cached.text
+
+        val connection = CTJS.makeWebRequest(url) as HttpURLConnection
+        cached?.etag?.let { connection.setRequestProperty("If-None-Match", it) }
+        cached?.lastModified?.let { connection.setRequestProperty("If-Modified-Since", it) }
+
+        val text = if (cached != null && connection.responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            cached.text
+        } else connection.inputStream.bufferedReader().use { it.readText() }
+
+        metadataCache[url] = CachedMetadata(
+            text,
+            connection.getHeaderField("ETag") ?: cached?.etag,
+            connection.getHeaderField("Last-Modified") ?: cached?.lastModified,
+            System.currentTimeMillis(),
+        )
+        saveMetadataCache()
+
+        return text
+    }
+
+    private fun loadMetadataCache(): ConcurrentHashMap<String, CachedMetadata> {
+        return try {
+            ConcurrentHashMap(CTJS.json.decodeFromString<Map<String, CachedMetadata>>(metadataCacheFile.readText()))
+        } catch (e: Exception) {
+            ConcurrentHashMap()
+        }
+    }
+
+    @Synchronized
+    private fun saveMetadataCache() {
+        try {
+            metadataCacheFile.parentFile.mkdirs()
+            metadataCacheFile.writeText(CTJS.json.encodeToString<Map<String, CachedMetadata>>(metadataCache))
+        } catch (e: Exception) {
+            e.printTraceToConsole()
         }
     }
 
+    @Serializable
+    private data class CachedMetadata(
+        val text: String,
+        val etag: String?,
+        val lastModified: String?,
+        val fetchedAt: Long,
+    )
+
     fun importModule(moduleName: String, requiredBy: String? = null): List<Module> {
         val alreadyImported = cachedModules.any {
             if (it.name.equals(moduleName, ignoreCase = true)) {
@@ -119,36 +255,120 @@ object ModuleUpdater : Initializer {
 
     data class DownloadResult(val name: String, val modVersion: String)
 
-    private fun downloadModule(name: String): DownloadResult? {
-        val downloadZip = File(modulesFolder, "currDownload.zip")
+    // Downloads the module called [name] into [target], or into a folder named after the
+    // zip's top-level folder in the modules folder if no target is given
+    private fun downloadModule(name: String, target: File? = null): DownloadResult? {
+        // Every download gets its own directory, so concurrent downloads can't collide
+        downloadsFolder.mkdirs()
+        val downloadDir = Files.createTempDirectory(downloadsFolder.toPath(), "download").toFile()
 
         try {
-            val url = "${CTJS.WEBSITE_ROOT}/api/modules/$name/scripts?modVersion=${CTJS.MOD_VERSION}"
+            val url = "$websiteRoot/api/modules/$name/scripts?modVersion=${CTJS.MOD_VERSION}"
             val connection = CTJS.makeWebRequest(url)
-            FileUtils.copyInputStreamToFile(connection.getInputStream(), downloadZip)
-            FileSystems.newFileSystem(downloadZip.toPath()).use {
-                val rootFolder = Files.newDirectoryStream(it.rootDirectories.first()).iterator()
-                if (!rootFolder.hasNext()) throw Exception("Too small")
-                val moduleFolder = rootFolder.next()
-                if (rootFolder.hasNext()) throw Exception("Too big")
-
-                val realName = moduleFolder.fileName.toString().trimEnd(File.separatorChar)
-                File(modulesFolder, realName).apply { mkdir() }
-                Files.walk(moduleFolder).forEach { path ->
-                    val resolvedPath = Paths.get(CTJS.MODULES_FOLDER, path.toString())
-                    if (Files.isDirectory(resolvedPath)) {
-                        return@forEach
-                    }
-                    Files.copy(path, resolvedPath, StandardCopyOption.REPLACE_EXISTING)
+            val digest = MessageDigest.getInstance("SHA-256")
+
+            val realName = DigestInputStream(connection.getInputStream(), digest).use {
+                extractZip(it, downloadDir)
+            }
+
+            // Each entry's CRC is already checked by ZipInputStream, but if the server also
+            // sends a hash of the whole archive, check that too
+            connection.getHeaderField("CT-Checksum")?.let { expected ->
+                val actual = digest.digest().joinToString("") { "%02x".format(it) }
+                require(expected.equals(actual, ignoreCase = true)) {
+                    "Checksum mismatch for module $name: expected $expected, got $actual"
                 }
-                return DownloadResult(realName, connection.getHeaderField("CT-Version"))
             }
+
+            installDirectory(File(downloadDir, realName), target ?: File(modulesFolder, realName))
+            return DownloadResult(realName, connection.getHeaderField("CT-Version"))
         } catch (exception: Exception) {
             exception.printTraceToConsole()
         } finally {
-            downloadZip.delete()
+            downloadDir.deleteRecursively()
         }
 
         return null
     }
+
+    // Extracts a module zip straight from [input] into [destination]
+    //
+    // @return the name of the single top-level folder in the zip
+    private fun extractZip(input: InputStream, destination: File): String {
+        val root = destination.toPath().toAbsolutePath().normalize()
+        var rootName: String? = null
+
+        val zip = ZipInputStream(input.buffered())
+        while (true) {
+            val entry = zip.nextEntry ?: break
+            val path = root.resolve(entry.name).normalize()
+            require(path.startsWith(root) && path != root) { "Invalid zip entry ${entry.name}" }
+
+            val relative = root.relativize(path)
+            val entryRoot = relative.getName(0).toString()
+            require((entry.isDirectory || relative.nameCount > 1) && (rootName == null || rootName == entryRoot)) {
+                "Module zip must contain exactly one folder"
+            }
+            rootName = entryRoot
+
+            if (entry.isDirectory) {
+                Files.createDirectories(path)
+            } else {
+                Files.createDirectories(path.parent)
+                Files.copy(zip, path)
+            }
+        }
+
+        // Read the rest of the archive (i.e. the central directory) so the checksum covers all of it
+        input.transferTo(OutputStream.nullOutputStream())
+
+        return rootName ?: error("Module zip is empty")
+    }
+
+    // Replaces [target] with [source] using directory renames, so a module is never left
+    // half-written. Files only in the old folder, such as data the module saved there, are
+    // carried over, just like when downloads were copied over the existing folder.
+    private fun installDirectory(source: File, target: File) {
+        if (!target.exists()) {
+            target.parentFile.mkdirs()
+            moveDirectory(source, target)
+            return
+        }
+
+        target.walk().filter(File::isFile).forEach {
+            val file = File(source, it.relativeTo(target).path)
+            if (!file.exists())
+                it.copyTo(file)
+        }
+
+        val backup = Files.createTempDirectory(downloadsFolder.toPath(), "backup").toFile()
+        backup.delete()
+
+        try {
+            moveDirectory(target, backup)
+        } catch (e: IOException) {
+            // Some of the module's files are in use (e.g. a loaded jar on Windows), so the
+            // folder can't be moved. Fall back to copying over it instead.
+            FileUtils.copyDirectory(source, target)
+            source.deleteRecursively()
+            return
+        }
+
+        try {
+            moveDirectory(source, target)
+        } catch (e: IOException) {
+            moveDirectory(backup, target)
+            throw e
+        }
+
+        backup.deleteRecursively()
+    }
+
+    private fun moveDirectory(from: File, to: File) {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE)
+        } catch (e: AtomicMoveNotSupportedException) {
+            FileUtils.moveDirectory(from, to)
+        }
+    }
 }
@@ -0,0 +1,125 @@
+package com.chattriggers.ctjs.internal.engine.module
+
+import com.chattriggers.ctjs.CTJS
+import com.chattriggers.ctjs.api.client.Client
+import com.chattriggers.ctjs.engine.printTraceToConsole
+import java.nio.file.*
+import java.nio.file.StandardWatchEventKinds.*
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+import kotlin.io.path.extension
+import kotlin.io.path.isDirectory
+import kotlin.io.path.name
+
+/**
+ * Watches the modules folder while [com.chattriggers.ctjs.api.Config.autoReloadModules] is
+ * enabled, and reloads only the modules whose scripts changed. Changes to a module's
+ * metadata, or modules being added or removed, still trigger a full reload.
+ */
+internal object ModuleWatcher {
+    // Editors often save a file in several steps, so wait for changes to settle down
+    private const val DEBOUNCE_MILLIS = 300L
+
+    private var watchThread: Thread? = null
+
+    @Synchronized
+    fun start() {
+        if (watchThread?.isAlive == true)
+            return
+
+        watchThread = thread(isDaemon = true, name = "ChatTriggers Module Watcher") {
+            try {
+                watch()
+            } catch (e: InterruptedException) {
+                // Stopped
+            } catch (e: ClosedWatchServiceException) {
+                // Stopped
+            } catch (e: Throwable) {
+                e.printTraceToConsole()
+            }
+        }
+    }
+
+    @Synchronized
+    fun stop() {
+        watchThread?.interrupt()
+        watchThread = null
+    }
+
+    private fun watch() {
+        val root = ModuleManager.modulesFolder.toPath().toAbsolutePath().normalize()
+
+        FileSystems.getDefault().newWatchService().use { service ->
+            val directories = mutableMapOf<WatchKey, Path>()
+
+            // WatchService isn't recursive, so every directory needs to be registered
+            fun registerAll(start: Path) {
+                Files.walk(start).use { paths ->
+                    paths.filter { it.isDirectory() }.forEach {
+                        directories[it.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE)] = it
+                    }
+                }
+            }
+
+            registerAll(root)
+
+            while (!Thread.currentThread().isInterrupted) {
+                // The kind of change to each path, preferring creates and deletes over modifies
+                val changed = mutableMapOf<Path, WatchEvent.Kind<*>>()
+                var overflowed = false
+
+                var key: WatchKey? = service.take()
+                while (key != null) {
+                    val directory = directories[key]
+                    for (event in key.pollEvents()) {
+                        if (event.kind() == OVERFLOW || directory == null) {
+                            overflowed = true
+                            continue
+                        }
+
+                        val path = directory.resolve(event.context() as Path)
+                        changed.merge(path, event.kind()) { old, new -> if (new == ENTRY_MODIFY) old else new }
+                        if (event.kind() == ENTRY_CREATE && path.isDirectory())
+                            registerAll(path)
+                    }
+
+                    if (!key.reset())
+                        directories.remove(key)
+
+                    key = service.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)
+                }
+
+                if (CTJS.isLoaded)
+                    handleChanges(root, changed, overflowed)
+            }
+        }
+    }
+
+    private fun handleChanges(root: Path, changed: Map<Path, WatchEvent.Kind<*>>, overflowed: Boolean) {
+        val modules = mutableSetOf<String>()
+        var needsFullReload = overflowed
+
+        for ((path, kind) in changed) {
+            val relative = root.relativize(path)
+
+            when {
+                // A module folder itself was added or removed. Some platforms (e.g. Windows) also
+                // report a folder as modified whenever a file inside it is written, which is ignored.
+                relative.nameCount == 1 -> needsFullReload =
+                    kind != ENTRY_MODIFY && (path.isDirectory() || Files.notExists(path))
+                relative.nameCount == 2 && path.name == "metadata.json" -> needsFullReload = true
+                // Only scripts are watched, since modules commonly write their own data files
+                path.extension == "js" -> modules.add(relative.getName(0).toString())
+            }
+
+            if (needsFullReload)
+                break
+        }
+
+        if (needsFullReload) {
+            Client.scheduleTask { CTJS.load() }
+        } else if (modules.isNotEmpty()) {
+            Client.scheduleTask { ModuleManager.reloadModules(modules) }
+        }
+    }
+}
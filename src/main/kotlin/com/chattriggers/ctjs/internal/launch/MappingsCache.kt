@@ -0,0 +1,208 @@
+package com.chattriggers.ctjs.internal.launch
+
+import com.chattriggers.ctjs.CTJS
+import com.chattriggers.ctjs.api.Mappings.MappedClass
+import com.chattriggers.ctjs.api.Mappings.MappedField
+import com.chattriggers.ctjs.api.Mappings.MappedMethod
+import com.chattriggers.ctjs.api.Mappings.MappedParameter
+import com.chattriggers.ctjs.api.Mappings.Mapping
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+
+/**
+ * Stores the processed yarn mappings in a compact binary file so they only need to be
+ * downloaded and parsed the first time a given mapping version is used.
+ *
+ * The file starts with a table of every distinct string, after which all names and
+ * descriptors are stored as indices into that table. Since the same descriptors are
+ * repeated across thousands of members, this keeps the file small and quick to read.
+ * The string table is followed by the name and offset of every class, so a class's
+ * members only need to be decoded when it is first looked up.
+ */
+internal object MappingsCache {
+    private const val MAGIC = 0x43544d50 // "CTMP"
+    private const val FORMAT_VERSION = 2
+
+    private val cacheFolder = File(CTJS.configLocation, "ChatTriggers/mappings")
+
+    private fun getCacheFile(mappingVersion: String) = File(cacheFolder, "yarn-$mappingVersion.bin")
+
+    /**
+     * @return an index over the cached classes for [mappingVersion], or null if there is
+     *         no usable cache
+     */
+    fun read(mappingVersion: String): MappingIndex? {
+        val file = getCacheFile(mappingVersion)
+        if (!file.exists())
+            return null
+
+        return try {
+            val buffer = FileChannel.open(file.toPath(), StandardOpenOption.READ).use {
+                it.map(FileChannel.MapMode.READ_ONLY, 0, it.size())
+            }
+            MappingIndex.read(buffer, mappingVersion)
+        } catch (e: Exception) {
+            // A corrupt or truncated cache is simply rebuilt
+            file.delete()
+            null
+        }
+    }
+
+    fun write(mappingVersion: String, classes: Collection<MappedClass>) {
+        cacheFolder.mkdirs()
+
+        // Caches for other mapping versions will never be read again
+        cacheFolder.listFiles()?.forEach {
+            if (it.isFile && it.name.endsWith(".bin"))
+                it.delete()
+        }
+
+        val strings = LinkedHashMap<String, Int>()
+        fun DataOutputStream.writeMapping(mapping: Mapping) {
+            writeInt(strings.getOrPut(mapping.original) { strings.size })
+            writeInt(strings.getOrPut(mapping.mapped) { strings.size })
+        }
+
+        // Class bodies are written first so that the string table and class offsets are
+        // known by the time the header is written
+        val bodyBytes = ByteArrayOutputStream()
+        val offsets = IntArray(classes.size)
+        DataOutputStream(bodyBytes).use { body ->
+            classes.forEachIndexed { i, clazz ->
+                offsets[i] = body.size()
+
+                body.writeInt(clazz.fields.size)
+                clazz.fields.values.forEach {
+                    body.writeMapping(it.name)
+                    body.writeMapping(it.type)
+                }
+
+                val methods = clazz.methods.values.flatten()
+                body.writeInt(methods.size)
+                methods.forEach { method ->
+                    body.writeMapping(method.name)
+                    body.writeMapping(method.returnType)
+                    body.writeInt(method.parameters.size)
+                    method.parameters.forEach {
+                        body.writeMapping(it.name)
+                        body.writeMapping(it.type)
+                        body.writeInt(it.lvtIndex)
+                    }
+                }
+            }
+        }
+
+        val header = ByteArrayOutputStream()
+        DataOutputStream(header).use { out ->
+            classes.forEachIndexed { i, clazz ->
+                out.writeMapping(clazz.name)
+                out.writeInt(offsets[i])
+            }
+        }
+
+        val tempFile = File.createTempFile("yarn", ".tmp", cacheFolder)
+        DataOutputStream(tempFile.outputStream().buffered()).use { out ->
+            out.writeInt(MAGIC)
+            out.writeInt(FORMAT_VERSION)
+            out.writeString(mappingVersion)
+
+            out.writeInt(strings.size)
+            strings.keys.forEach { out.writeString(it) }
+
+            out.writeInt(classes.size)
+            header.writeTo(out)
+            bodyBytes.writeTo(out)
+        }
+
+        Files.move(
+            tempFile.toPath(),
+            getCacheFile(mappingVersion).toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE,
+        )
+    }
+
+    private fun DataOutputStream.writeString(string: String) {
+        val bytes = string.toByteArray()
+        writeInt(bytes.size)
+        write(bytes)
+    }
+
+    private fun ByteBuffer.getString(): String {
+        val bytes = ByteArray(getInt())
+        get(bytes)
+        return String(bytes)
+    }
+
+    /**
+     * A read-only view of a mappings cache file. Only the string table and class names are
+     * decoded up front; [materialize] decodes the members of a single class on demand.
+     */
+    class MappingIndex private constructor(
+        private val buffer: ByteBuffer,
+        private val strings: Array<String>,
+        private val bodyStart: Int,
+        private val offsets: Map<String, Int>,
+
+        /**
+         * The name of every class in the index, keyed by its unmapped name
+         */
+        val classNames: Map<String, Mapping>,
+    ) {
+        fun materialize(unmappedName: String): MappedClass? {
+            val offset = offsets[unmappedName] ?: return null
+            val name = classNames[unmappedName]!!
+
+            // Each call gets its own position so classes can be decoded from any thread
+            val buffer = buffer.duplicate().position(bodyStart + offset)
+            fun readMapping() = Mapping(strings[buffer.getInt()], strings[buffer.getInt()])
+
+            val fields = mutableMapOf<String, MappedField>()
+            repeat(buffer.getInt()) {
+                val field = MappedField(readMapping(), readMapping())
+                fields[field.name.original] = field
+            }
+
+            val methods = mutableMapOf<String, MutableList<MappedMethod>>()
+            repeat(buffer.getInt()) {
+                val methodName = readMapping()
+                val returnType = readMapping()
+                val params = List(buffer.getInt()) {
+                    MappedParameter(readMapping(), readMapping(), buffer.getInt())
+                }
+
+                methods.getOrPut(methodName.original, ::mutableListOf).add(
+                    MappedMethod(methodName, params, returnType)
+                )
+            }
+
+            return MappedClass(name, fields, methods)
+        }
+
+        companion object {
+            fun read(buffer: ByteBuffer, mappingVersion: String): MappingIndex? {
+                if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION || buffer.getString() != mappingVersion)
+                    return null
+
+                val strings = Array(buffer.getInt()) { buffer.getString() }
+
+                val classCount = buffer.getInt()
+                val offsets = HashMap<String, Int>(classCount * 2)
+                val classNames = HashMap<String, Mapping>(classCount * 2)
+                repeat(classCount) {
+                    val name = Mapping(strings[buffer.getInt()], strings[buffer.getInt()])
+                    classNames[name.original] = name
+                    offsets[name.original] = buffer.getInt()
+                }
+
+                return MappingIndex(buffer, strings, buffer.position(), offsets, classNames)
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.chattriggers.ctjs.internal.listeners
 
+import com.chattriggers.ctjs.CTJS
+import com.chattriggers.ctjs.api.Config
 import com.chattriggers.ctjs.api.entity.BlockEntity
 import com.chattriggers.ctjs.api.entity.Entity
 import com.chattriggers.ctjs.api.entity.PlayerInteraction
@@ -17,6 +19,8 @@ import com.chattriggers.ctjs.api.world.block.BlockPos
 import com.chattriggers.ctjs.internal.engine.CTEvents
 import com.chattriggers.ctjs.internal.engine.JSContextFactory
 import com.chattriggers.ctjs.internal.engine.JSLoader
+import com.chattriggers.ctjs.internal.engine.StepScheduler
+import com.chattriggers.ctjs.internal.render.RecordedMesh
 import com.chattriggers.ctjs.internal.utils.Initializer
 import gg.essential.universal.UMinecraft
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents
@@ -25,8 +29,14 @@ import net.fabricmc.fabric.api.client.message.v1.ClientSendMessageEvents
 import net.fabricmc.fabric.api.client.screen.v1.ScreenEvents
 import net.fabricmc.fabric.api.client.screen.v1.ScreenKeyboardEvents
 import net.fabricmc.fabric.api.event.player.*
+import net.fabricmc.fabric.api.resource.ResourceManagerHelper
+import net.fabricmc.fabric.api.resource.ResourceReloadListenerKeys
+import net.fabricmc.fabric.api.resource.SimpleSynchronousResourceReloadListener
+import net.minecraft.resource.ResourceManager
+import net.minecraft.resource.ResourceType
 import net.minecraft.text.Text
 import net.minecraft.util.ActionResult
+import net.minecraft.util.Identifier
 import net.minecraft.util.TypedActionResult
 import org.lwjgl.glfw.GLFW
 import org.mozilla.javascript.Context
@@ -88,6 +98,9 @@ object ClientListener : Initializer {
         ScreenEvents.BEFORE_INIT.register { _, screen, _, _ ->
             // TODO: Why does Renderer.drawString not work in here?
             ScreenEvents.beforeRender(screen).register { _, stack, mouseX, mouseY, partialTicks ->
+                if (!JSLoader.hasTriggers(TriggerType.GUI_RENDER))
+                    return@register
+
                 Renderer.withMatrix(stack.matrices, partialTicks) {
                     TriggerType.GUI_RENDER.triggerAll(mouseX, mouseY, screen)
                 }
@@ -95,6 +108,9 @@ object ClientListener : Initializer {
 
             // TODO: Why does Renderer.drawString not work in here?
             ScreenEvents.afterRender(screen).register { _, stack, mouseX, mouseY, partialTicks ->
+                if (!JSLoader.hasTriggers(TriggerType.POST_GUI_RENDER))
+                    return@register
+
                 Renderer.withMatrix(stack.matrices, partialTicks) {
                     TriggerType.POST_GUI_RENDER.triggerAll(mouseX, mouseY, screen, partialTicks)
                 }
@@ -114,30 +130,63 @@ object ClientListener : Initializer {
         }
 
         CTEvents.PACKET_RECEIVED.register { packet, ctx ->
+            if (!JSLoader.hasTriggers(TriggerType.PACKET_RECEIVED, packet.javaClass))
+                return@register
+
             JSLoader.wrapInContext(packetContext) {
-                TriggerType.PACKET_RECEIVED.triggerAll(packet, ctx)
+                JSLoader.execClassFiltered(TriggerType.PACKET_RECEIVED, packet.javaClass, arrayOf(packet, ctx))
             }
         }
 
-        CTEvents.RENDER_TICK.register {
-            TriggerType.STEP.triggerAll()
-        }
+        CTEvents.RENDER_TICK.register(StepScheduler::runFrame)
+
+        // Recorded text refers to glyph atlases, which are rebuilt along with the fonts
+        ResourceManagerHelper.get(ResourceType.CLIENT_RESOURCES).registerReloadListener(
+            object : SimpleSynchronousResourceReloadListener {
+                override fun getFabricId(): Identifier = Identifier.of(CTJS.MOD_ID, "recorded_meshes")
+
+                override fun getFabricDependencies() = listOf(ResourceReloadListenerKeys.FONTS)
+
+                override fun reload(manager: ResourceManager) = RecordedMesh.invalidateAll()
+            }
+        )
 
         CTEvents.RENDER_OVERLAY.register { stack, partialTicks ->
+            if (!JSLoader.hasTriggers(TriggerType.RENDER_OVERLAY))
+                return@register
+
             Renderer.withMatrix(stack, partialTicks) {
-                TriggerType.RENDER_OVERLAY.triggerAll()
+                // Opt-in, since batched drawing is not tinted by Renderer.colorize
+                if (Config.batchOverlayRendering) {
+                    Renderer.batched { TriggerType.RENDER_OVERLAY.triggerAll() }
+                } else TriggerType.RENDER_OVERLAY.triggerAll()
             }
         }
 
         CTEvents.RENDER_ENTITY.register { stack, entity, partialTicks, ci ->
+            // Checking the class first means entities no trigger cares about are never wrapped
+            if (!JSLoader.hasTriggers(TriggerType.RENDER_ENTITY, entity.javaClass))
+                return@register
+
             Renderer.withMatrix(stack, partialTicks) {
-                TriggerType.RENDER_ENTITY.triggerAll(Entity.fromMC(entity), partialTicks, ci)
+                JSLoader.execClassFiltered(
+                    TriggerType.RENDER_ENTITY,
+                    entity.javaClass,
+                    arrayOf(Entity.fromMC(entity), partialTicks, ci),
+                )
             }
         }
 
         CTEvents.RENDER_BLOCK_ENTITY.register { stack, blockEntity, partialTicks, ci ->
+            if (!JSLoader.hasTriggers(TriggerType.RENDER_BLOCK_ENTITY, blockEntity.javaClass))
+                return@register
+
             Renderer.withMatrix(stack, partialTicks) {
-                TriggerType.RENDER_BLOCK_ENTITY.triggerAll(BlockEntity(blockEntity), partialTicks, ci)
+                JSLoader.execClassFiltered(
+                    TriggerType.RENDER_BLOCK_ENTITY,
+                    blockEntity.javaClass,
+                    arrayOf(BlockEntity(blockEntity), partialTicks, ci),
+                )
             }
         }
 
@@ -226,23 +275,25 @@ object ClientListener : Initializer {
 
     private fun handleChatMessage(message: Text, actionBar: Boolean): Boolean {
         val textComponent = TextComponent(message)
-        val event = ChatTrigger.Event(textComponent)
+        val type = if (actionBar) TriggerType.ACTION_BAR else TriggerType.CHAT
 
-        return if (actionBar) {
+        if (actionBar) {
             actionBarHistory += textComponent
             if (actionBarHistory.size > 1000)
                 actionBarHistory.removeAt(0)
-
-            TriggerType.ACTION_BAR.triggerAll(event)
-            !event.isCancelled()
         } else {
             chatHistory += textComponent
             if (chatHistory.size > 1000)
                 chatHistory.removeAt(0)
+        }
 
-            TriggerType.CHAT.triggerAll(event)
+        if (!JSLoader.hasTriggers(type))
+            return true
 
-            !event.isCancelled()
-        }
+        val event = ChatTrigger.Event(textComponent)
+
+        type.triggerAll(event)
+
+        return !event.isCancelled()
     }
 }
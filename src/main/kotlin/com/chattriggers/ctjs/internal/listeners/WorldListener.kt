@@ -1,8 +1,10 @@
 package com.chattriggers.ctjs.internal.listeners
 
+import com.chattriggers.ctjs.api.render.Culling
 import com.chattriggers.ctjs.api.render.Renderer
 import com.chattriggers.ctjs.api.triggers.CancellableEvent
 import com.chattriggers.ctjs.api.triggers.TriggerType
+import com.chattriggers.ctjs.internal.engine.JSLoader
 import com.chattriggers.ctjs.internal.utils.Initializer
 import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderEvents
 import net.minecraft.util.math.BlockPos
@@ -10,12 +12,20 @@ import net.minecraft.util.math.BlockPos
 object WorldListener : Initializer {
     override fun init() {
         WorldRenderEvents.BLOCK_OUTLINE.register { _, ctx ->
+            if (!JSLoader.hasTriggers(TriggerType.BLOCK_HIGHLIGHT))
+                return@register true
+
             val event = CancellableEvent()
             TriggerType.BLOCK_HIGHLIGHT.triggerAll(BlockPos(ctx.blockPos()), event)
             !event.isCancelled()
         }
 
         WorldRenderEvents.START.register { ctx ->
+            Culling.update(ctx)
+
+            if (!JSLoader.hasTriggers(TriggerType.PRE_RENDER_WORLD))
+                return@register
+
             val deltaTicks = ctx.tickCounter().getTickDelta(false)
             Renderer.withMatrix(ctx.matrixStack(), deltaTicks) {
                 TriggerType.PRE_RENDER_WORLD.triggerAll(deltaTicks)
@@ -23,6 +33,11 @@ object WorldListener : Initializer {
         }
 
         WorldRenderEvents.LAST.register { ctx ->
+            Culling.update(ctx)
+
+            if (!JSLoader.hasTriggers(TriggerType.POST_RENDER_WORLD))
+                return@register
+
             val deltaTicks = ctx.tickCounter().getTickDelta(false)
             Renderer.withMatrix(ctx.matrixStack(), deltaTicks) {
                 TriggerType.POST_RENDER_WORLD.triggerAll(deltaTicks)
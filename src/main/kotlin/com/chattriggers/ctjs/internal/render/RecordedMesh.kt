@@ -0,0 +1,121 @@
+package com.chattriggers.ctjs.internal.render
+
+import net.minecraft.client.render.RenderLayer
+import net.minecraft.client.render.VertexConsumer
+import net.minecraft.client.render.VertexConsumerProvider
+import org.joml.Matrix4f
+
+/**
+ * Vertices that were recorded once in local space and can be drawn again every frame
+ * without running the code that produced them. This is used to skip text layout for text
+ * that hasn't changed since the last frame.
+ *
+ * Meshes may reference atlas textures that are rebuilt when resources are reloaded, so
+ * they should be recorded again once [isValid] returns false.
+ */
+internal class RecordedMesh private constructor(private val layers: Map<RenderLayer, IntArray>) {
+    private val generation = currentGeneration
+
+    val isValid get() = generation == currentGeneration
+
+    /**
+     * Writes the recorded vertices to [consumers], transformed by [matrix]
+     */
+    fun draw(consumers: VertexConsumerProvider, matrix: Matrix4f) {
+        layers.forEach { (layer, data) ->
+            val buffer = consumers.getBuffer(layer)
+
+            // Elements that aren't part of the layer's vertex format are ignored by the buffer
+            for (i in data.indices step STRIDE) {
+                buffer
+                    .vertex(matrix, Float.fromBits(data[i]), Float.fromBits(data[i + 1]), Float.fromBits(data[i + 2]))
+                    .color(data[i + 3])
+                    .texture(Float.fromBits(data[i + 4]), Float.fromBits(data[i + 5]))
+                    .overlay(data[i + 6])
+                    .light(data[i + 7])
+                    .normal(Float.fromBits(data[i + 8]), Float.fromBits(data[i + 9]), Float.fromBits(data[i + 10]))
+            }
+        }
+    }
+
+    /**
+     * Collects everything written to it into a [RecordedMesh]. Anything drawn into a recorder
+     * should use an identity matrix, since the mesh is transformed when it is drawn.
+     */
+    class Recorder : VertexConsumerProvider {
+        private val consumers = linkedMapOf<RenderLayer, RecordingConsumer>()
+
+        override fun getBuffer(layer: RenderLayer): VertexConsumer = consumers.getOrPut(layer, ::RecordingConsumer)
+
+        fun build() = RecordedMesh(consumers.mapValues { it.value.toArray() })
+    }
+
+    private class RecordingConsumer : VertexConsumer {
+        // Floats are stored by their bits, so everything fits in a single array
+        private var data = IntArray(STRIDE * 64)
+        private var size = 0
+
+        // The start of the vertex currently being written
+        private var current = -STRIDE
+
+        override fun vertex(x: Float, y: Float, z: Float) = apply {
+            if (size + STRIDE > data.size)
+                data = data.copyOf(data.size * 2)
+
+            current = size
+            size += STRIDE
+
+            data[current] = x.toRawBits()
+            data[current + 1] = y.toRawBits()
+            data[current + 2] = z.toRawBits()
+            data[current + 3] = -1
+            data[current + 4] = 0f.toRawBits()
+            data[current + 5] = 0f.toRawBits()
+            data[current + 6] = 0
+            data[current + 7] = 0
+            data[current + 8] = 0f.toRawBits()
+            data[current + 9] = 1f.toRawBits()
+            data[current + 10] = 0f.toRawBits()
+        }
+
+        override fun color(red: Int, green: Int, blue: Int, alpha: Int) = apply {
+            data[current + 3] = (alpha shl 24) or (red shl 16) or (green shl 8) or blue
+        }
+
+        override fun texture(u: Float, v: Float) = apply {
+            data[current + 4] = u.toRawBits()
+            data[current + 5] = v.toRawBits()
+        }
+
+        override fun overlay(u: Int, v: Int) = apply {
+            data[current + 6] = (v shl 16) or (u and 0xffff)
+        }
+
+        override fun light(u: Int, v: Int) = apply {
+            data[current + 7] = (v shl 16) or (u and 0xffff)
+        }
+
+        override fun normal(x: Float, y: Float, z: Float) = apply {
+            data[current + 8] = x.toRawBits()
+            data[current + 9] = y.toRawBits()
+            data[current + 10] = z.toRawBits()
+        }
+
+        fun toArray() = data.copyOf(size)
+    }
+
+    companion object {
+        // position (3), color, uv (2), overlay, light, normal (3)
+        private const val STRIDE = 11
+
+        @Volatile
+        private var currentGeneration = 0
+
+        /**
+         * Marks every existing mesh as outdated
+         */
+        fun invalidateAll() {
+            currentGeneration++
+        }
+    }
+}
@@ -10,12 +10,14 @@ import com.chattriggers.ctjs.internal.engine.module.ModuleUpdater
 import com.chattriggers.ctjs.internal.listeners.ClientListener
 import com.chattriggers.ctjs.internal.listeners.MouseListener
 import com.chattriggers.ctjs.internal.listeners.WorldListener
+import com.chattriggers.ctjs.internal.world.BlockEntityIndex
 
 internal interface Initializer {
     fun init()
 
     companion object {
         internal val initializers = listOf(
+            BlockEntityIndex,
             ClientListener,
             ConsoleHostProcess,
             CPS,
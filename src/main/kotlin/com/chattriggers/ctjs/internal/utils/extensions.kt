@@ -47,6 +47,32 @@ fun NativeObject?.getOrNull(key: String): Any? {
     return this?.get(key).takeIf { it != Scriptable.NOT_FOUND }
 }
 
+/**
+ * Copies a float[], a JS typed array, or any other list of numbers into a [FloatArray]
+ */
+fun Any.toFloatArray(): FloatArray = when (this) {
+    is FloatArray -> this
+    is DoubleArray -> FloatArray(size) { this[it].toFloat() }
+    // This includes JS arrays and typed arrays, which Rhino exposes as lists
+    is List<*> -> FloatArray(size) { (this[it] as Number).toFloat() }
+    else -> throw IllegalArgumentException("Expected an array of numbers, but got ${this::class.simpleName}")
+}
+
+/**
+ * Returns a read-only view of this list that applies [transform] to each element the first
+ * time it is accessed, so elements that are never looked at are never transformed
+ */
+fun <T, R> List<T>.mapLazily(transform: (T) -> R): List<R> = object : AbstractList<R>() {
+    private val cache = arrayOfNulls<Any>(this@mapLazily.size)
+
+    override val size get() = cache.size
+
+    override fun get(index: Int): R {
+        @Suppress("UNCHECKED_CAST")
+        return (cache[index] ?: transform(this@mapLazily[index]).also { cache[index] = it }) as R
+    }
+}
+
 fun Double.toRadians() = this * MathHelper.RADIANS_PER_DEGREE
 fun Float.toRadians() = this * MathHelper.RADIANS_PER_DEGREE
 fun Double.toDegrees() = this * MathHelper.DEGREES_PER_RADIAN
@@ -0,0 +1,142 @@
+package com.chattriggers.ctjs.internal.world
+
+import com.chattriggers.ctjs.MCBlockEntity
+import com.chattriggers.ctjs.internal.utils.Initializer
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientBlockEntityEvents
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientChunkEvents
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents
+import net.minecraft.client.world.ClientWorld
+import net.minecraft.util.math.Box
+import net.minecraft.util.math.ChunkPos
+import net.minecraft.util.math.MathHelper
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Keeps track of every block entity in the loaded chunks of the client world, grouped by
+ * chunk and by class, so lookups don't have to walk the whole chunk map.
+ *
+ * The index is updated from chunk and block entity load/unload events, which all happen on
+ * the client thread. Lookups may happen from any thread.
+ */
+internal object BlockEntityIndex : Initializer {
+    private var world: ClientWorld? = null
+
+    // chunk pos -> block pos -> block entity
+    private val chunks = ConcurrentHashMap<Long, ConcurrentHashMap<Long, MCBlockEntity>>()
+    private val byClass = ConcurrentHashMap<Class<*>, MutableSet<MCBlockEntity>>()
+
+    override fun init() {
+        ClientChunkEvents.CHUNK_LOAD.register { world, chunk ->
+            setWorld(world)
+            // Chunks can be loaded again without being unloaded first, so start from scratch
+            removeChunk(chunk.pos.toLong())
+            chunk.blockEntities.values.forEach(::add)
+        }
+
+        ClientChunkEvents.CHUNK_UNLOAD.register { world, chunk ->
+            setWorld(world)
+            removeChunk(chunk.pos.toLong())
+        }
+
+        ClientBlockEntityEvents.BLOCK_ENTITY_LOAD.register { blockEntity, world ->
+            setWorld(world)
+            add(blockEntity)
+        }
+
+        ClientBlockEntityEvents.BLOCK_ENTITY_UNLOAD.register { blockEntity, world ->
+            setWorld(world)
+            remove(blockEntity)
+        }
+
+        ClientPlayConnectionEvents.DISCONNECT.register { _, _ -> clear() }
+    }
+
+    /**
+     * @return every indexed block entity that is an instance of [clazz]
+     */
+    fun getAll(clazz: Class<*>): List<MCBlockEntity> {
+        val result = mutableListOf<MCBlockEntity>()
+        byClass.forEach { (type, blockEntities) ->
+            if (clazz.isAssignableFrom(type))
+                result.addAll(blockEntities)
+        }
+        return result
+    }
+
+    /**
+     * @return every indexed block entity that is an instance of [clazz], whose block is
+     *         inside [box], and which passes [predicate]
+     */
+    fun getInBox(box: Box, clazz: Class<*>, predicate: (MCBlockEntity) -> Boolean = { true }): List<MCBlockEntity> {
+        val result = mutableListOf<MCBlockEntity>()
+
+        fun collect(blockEntities: Map<Long, MCBlockEntity>) {
+            blockEntities.values.forEach {
+                val pos = it.pos
+                if (clazz.isInstance(it) &&
+                    pos.x + 1 > box.minX && pos.x < box.maxX &&
+                    pos.y + 1 > box.minY && pos.y < box.maxY &&
+                    pos.z + 1 > box.minZ && pos.z < box.maxZ &&
+                    predicate(it)
+                ) {
+                    result.add(it)
+                }
+            }
+        }
+
+        val minChunkX = MathHelper.floor(box.minX) shr 4
+        val maxChunkX = MathHelper.floor(box.maxX) shr 4
+        val minChunkZ = MathHelper.floor(box.minZ) shr 4
+        val maxChunkZ = MathHelper.floor(box.maxZ) shr 4
+
+        if ((maxChunkX - minChunkX + 1).toLong() * (maxChunkZ - minChunkZ + 1) > chunks.size) {
+            // The box covers more chunks than are loaded, so it's cheaper to check them all
+            chunks.values.forEach(::collect)
+        } else {
+            for (chunkX in minChunkX..maxChunkX) {
+                for (chunkZ in minChunkZ..maxChunkZ)
+                    chunks[ChunkPos.toLong(chunkX, chunkZ)]?.let(::collect)
+            }
+        }
+
+        return result
+    }
+
+    // Nothing is unloaded when switching dimensions, so drop everything from the old world
+    private fun setWorld(world: ClientWorld) {
+        if (world !== this.world) {
+            clear()
+            this.world = world
+        }
+    }
+
+    private fun add(blockEntity: MCBlockEntity) {
+        val chunk = chunks.getOrPut(ChunkPos.toLong(blockEntity.pos.x shr 4, blockEntity.pos.z shr 4)) {
+            ConcurrentHashMap()
+        }
+
+        val previous = chunk.put(blockEntity.pos.asLong(), blockEntity)
+        if (previous != null && previous !== blockEntity)
+            byClass[previous.javaClass]?.remove(previous)
+
+        byClass.getOrPut(blockEntity.javaClass) { ConcurrentHashMap.newKeySet() }.add(blockEntity)
+    }
+
+    private fun remove(blockEntity: MCBlockEntity) {
+        val chunk = chunks[ChunkPos.toLong(blockEntity.pos.x shr 4, blockEntity.pos.z shr 4)] ?: return
+        if (chunk.remove(blockEntity.pos.asLong(), blockEntity))
+            byClass[blockEntity.javaClass]?.remove(blockEntity)
+    }
+
+    private fun removeChunk(pos: Long) {
+        chunks.remove(pos)?.values?.forEach {
+            byClass[it.javaClass]?.remove(it)
+        }
+    }
+
+    private fun clear() {
+        world = null
+        chunks.clear()
+        byClass.clear()
+    }
+}
@@ -0,0 +1,125 @@
+package com.chattriggers.ctjs.internal.world
+
+import com.chattriggers.ctjs.MCBlock
+import com.chattriggers.ctjs.api.world.BlockRegion
+import net.minecraft.block.BlockState
+import net.minecraft.block.Blocks
+import net.minecraft.client.world.ClientWorld
+import net.minecraft.util.math.ChunkSectionPos
+import net.minecraft.world.chunk.PalettedContainer
+
+/**
+ * Reads boxes of block states straight from chunk sections into a [BlockRegion], one section
+ * at a time, so the world's chunk lookup is done once per section instead of once per block.
+ */
+internal object BlockRegionReader {
+    // 64 MB of ids, which is a 256 x 256 x 256 box
+    private const val MAX_BLOCKS = 256 * 256 * 256
+
+    private val VOID_AIR_ID = MCBlock.getRawIdFromState(Blocks.VOID_AIR.defaultState)
+
+    /**
+     * A box of the world, with both corners inclusive
+     */
+    class Bounds(x1: Int, y1: Int, z1: Int, x2: Int, y2: Int, z2: Int) {
+        val minX = minOf(x1, x2)
+        val minY = minOf(y1, y2)
+        val minZ = minOf(z1, z2)
+        val maxX = maxOf(x1, x2)
+        val maxY = maxOf(y1, y2)
+        val maxZ = maxOf(z1, z2)
+
+        // The chunk sections the box touches on each axis
+        val sectionsX = (minX shr 4)..(maxX shr 4)
+        val sectionsY = (minY shr 4)..(maxY shr 4)
+        val sectionsZ = (minZ shr 4)..(maxZ shr 4)
+
+        init {
+            val blocks = (maxX - minX + 1).toLong() * (maxY - minY + 1) * (maxZ - minZ + 1)
+            require(blocks <= MAX_BLOCKS) { "Cannot read more than $MAX_BLOCKS blocks at once, but got $blocks" }
+        }
+    }
+
+    /**
+     * Reads the blocks in [bounds] directly from the world
+     */
+    fun read(world: ClientWorld, bounds: Bounds) = read(bounds) { x, y, z -> getContainer(world, x, y, z) }
+
+    /**
+     * Copies every chunk section [bounds] touches, so the blocks can be read later by calling
+     * the returned function on another thread while the world keeps changing
+     */
+    fun snapshot(world: ClientWorld, bounds: Bounds): () -> BlockRegion {
+        val sections = mutableMapOf<Long, PalettedContainer<BlockState>?>()
+
+        for (sectionX in bounds.sectionsX) {
+            for (sectionY in bounds.sectionsY) {
+                for (sectionZ in bounds.sectionsZ) {
+                    sections[ChunkSectionPos.asLong(sectionX, sectionY, sectionZ)] =
+                        getContainer(world, sectionX, sectionY, sectionZ)?.copy()
+                }
+            }
+        }
+
+        return { read(bounds) { x, y, z -> sections[ChunkSectionPos.asLong(x, y, z)] } }
+    }
+
+    private fun read(
+        bounds: Bounds,
+        getSection: (sectionX: Int, sectionY: Int, sectionZ: Int) -> PalettedContainer<BlockState>?,
+    ): BlockRegion {
+        val sizeX = bounds.maxX - bounds.minX + 1
+        val sizeY = bounds.maxY - bounds.minY + 1
+        val sizeZ = bounds.maxZ - bounds.minZ + 1
+        val ids = IntArray(sizeX * sizeY * sizeZ)
+
+        // Neighbouring blocks are usually the same state, which skips the id lookup
+        var lastState: BlockState? = null
+        var lastId = 0
+
+        for (sectionX in bounds.sectionsX) {
+            for (sectionY in bounds.sectionsY) {
+                for (sectionZ in bounds.sectionsZ) {
+                    val fromX = maxOf(bounds.minX, sectionX shl 4)
+                    val fromY = maxOf(bounds.minY, sectionY shl 4)
+                    val fromZ = maxOf(bounds.minZ, sectionZ shl 4)
+                    val toX = minOf(bounds.maxX, (sectionX shl 4) + 15)
+                    val toY = minOf(bounds.maxY, (sectionY shl 4) + 15)
+                    val toZ = minOf(bounds.maxZ, (sectionZ shl 4) + 15)
+
+                    val container = getSection(sectionX, sectionY, sectionZ)
+
+                    for (y in fromY..toY) {
+                        for (z in fromZ..toZ) {
+                            var index = ((y - bounds.minY) * sizeZ + (z - bounds.minZ)) * sizeX + (fromX - bounds.minX)
+
+                            if (container == null) {
+                                ids.fill(VOID_AIR_ID, index, index + toX - fromX + 1)
+                                continue
+                            }
+
+                            for (x in fromX..toX) {
+                                val state = container.get(x and 15, y and 15, z and 15)
+                                if (state !== lastState) {
+                                    lastState = state
+                                    lastId = MCBlock.getRawIdFromState(state)
+                                }
+                                ids[index++] = lastId
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        return BlockRegion(bounds.minX, bounds.minY, bounds.minZ, sizeX, sizeY, sizeZ, ids)
+    }
+
+    private fun getContainer(world: ClientWorld, sectionX: Int, sectionY: Int, sectionZ: Int): PalettedContainer<BlockState>? {
+        if (sectionY < world.bottomSectionCoord || sectionY >= world.topSectionCoord)
+            return null
+
+        val chunk = world.chunkManager.getWorldChunk(sectionX, sectionZ, false) ?: return null
+        return chunk.sectionArray[world.sectionCoordToIndex(sectionY)].blockStateContainer
+    }
+}
@@ -24,13 +24,28 @@
 
     global.sync = (func, lock) => new org.mozilla.javascript.Synchronizer(func, lock);
 
-    global.setTimeout = function (func, delay) {
-        new Thread(function () {
-            Thread.sleep(delay);
-            func();
-        }).start();
+    const Timers = Java.type("com.chattriggers.ctjs.internal.engine.JSTimers").INSTANCE;
+
+    global.setTimeout = function (func, delay = 0) {
+        return Timers.setTimeout(func, delay, false, Array.prototype.slice.call(arguments, 2));
+    };
+
+    global.setInterval = function (func, delay = 0) {
+        return Timers.setInterval(func, delay, false, Array.prototype.slice.call(arguments, 2));
+    };
+
+    // Same as setTimeout and setInterval, but the callback runs on the client thread
+    global.setClientTimeout = function (func, delay = 0) {
+        return Timers.setTimeout(func, delay, true, Array.prototype.slice.call(arguments, 2));
+    };
+
+    global.setClientInterval = function (func, delay = 0) {
+        return Timers.setInterval(func, delay, true, Array.prototype.slice.call(arguments, 2));
     };
 
+    global.clearTimeout = id => Timers.clear(id);
+    global.clearInterval = id => Timers.clear(id);
+
     const getClassName = path => path.substring(path.lastIndexOf('.') + 1)
 
     function loadClass(path, className = getClassName(path)) {
@@ -81,6 +96,7 @@
     loadClass("com.chattriggers.ctjs.api.message.TextComponent");
 
     loadClass("com.chattriggers.ctjs.api.render.Book");
+    loadClass("com.chattriggers.ctjs.api.render.Culling");
     loadClass("com.chattriggers.ctjs.api.render.Display");
     loadClass("com.chattriggers.ctjs.api.render.Gui");
     loadClass("com.chattriggers.ctjs.api.render.Image");
@@ -118,6 +134,7 @@
     loadClass("com.chattriggers.ctjs.engine.Register", "TriggerRegister");
     loadClass("com.chattriggers.ctjs.engine.WrappedThread", "Thread");
     global.Priority = Java.class("com.chattriggers.ctjs.api.triggers.Trigger").Priority;
+    global.DispatchMode = Java.class("com.chattriggers.ctjs.api.triggers.PacketTrigger").DispatchMode;
     loadClass("com.chattriggers.ctjs.CTJS", "ChatTriggers");
     global.Console = Java.type("com.chattriggers.ctjs.engine.Console").INSTANCE;
 
@@ -66,6 +66,7 @@ private val providedTypes = mutableMapOf(
     "TextComponent" to "com.chattriggers.ctjs.api.message.TextComponent",
 
     "Book" to "com.chattriggers.ctjs.api.render.Book",
+    "Culling" to "com.chattriggers.ctjs.api.render.Culling",
     "Display" to "com.chattriggers.ctjs.api.render.Display",
     "Gui" to "com.chattriggers.ctjs.api.render.Gui",
     "Image" to "com.chattriggers.ctjs.api.render.Image",
@@ -98,6 +99,7 @@ private val providedTypes = mutableMapOf(
     "TriggerRegister" to "com.chattriggers.ctjs.engine.Register",
     "Thread" to "com.chattriggers.ctjs.engine.WrappedThread",
     "Priority" to "com.chattriggers.ctjs.api.triggers.Trigger\$Priority",
+    "DispatchMode" to "com.chattriggers.ctjs.api.triggers.PacketTrigger\$DispatchMode",
     "ChatTriggers" to "com.chattriggers.ctjs.CTJS",
     "Console" to "com.chattriggers.ctjs.engine.Console",
 
@@ -200,11 +202,38 @@ val prologue = """
       function sync(func: () => void, lock: unknown): void;
   
       /**
-       * Runs `func` after `delayInMs` milliseconds. A new thread is spawned to accomplish
-       * this, which means this function is asynchronous. If you want to avoid the Thread
-       * instantiation, use `Client.scheduleTask(delayInTicks, func)`.
+       * Runs `func` after `delayInMs` milliseconds on a shared timer thread, which means
+       * this function is asynchronous. Any extra arguments are passed to `func`. Returns an
+       * id that can be passed to `clearTimeout`.
        */
-      function setTimeout(func: () => void, delayInMs: number): void;
+      function setTimeout(func: (...args: any[]) => void, delayInMs?: number, ...args: any[]): number;
+
+      /**
+       * Runs `func` every `delayInMs` milliseconds on a shared timer thread until it is
+       * cleared. Any extra arguments are passed to `func`. Returns an id that can be passed
+       * to `clearInterval`.
+       */
+      function setInterval(func: (...args: any[]) => void, delayInMs?: number, ...args: any[]): number;
+
+      /**
+       * Same as `setTimeout`, but `func` runs on the client thread
+       */
+      function setClientTimeout(func: (...args: any[]) => void, delayInMs?: number, ...args: any[]): number;
+
+      /**
+       * Same as `setInterval`, but `func` runs on the client thread
+       */
+      function setClientInterval(func: (...args: any[]) => void, delayInMs?: number, ...args: any[]): number;
+
+      /**
+       * Cancels a timeout created by `setTimeout` or `setClientTimeout`
+       */
+      function clearTimeout(id: number): void;
+
+      /**
+       * Cancels an interval created by `setInterval` or `setClientInterval`
+       */
+      function clearInterval(id: number): void;
 
       const ArrayList: typeof java.util.ArrayList;
       interface ArrayList<T> extends java.util.ArrayList<T> {}